@@ -1,8 +1,11 @@
 package com.example.tagihan.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 /**
  * Configuration for PDF generation settings
  */
@@ -10,12 +13,21 @@ import org.springframework.context.annotation.Configuration;
 public class PdfGenerationConfig {
 
     @Bean
-    public PdfSettings pdfSettings() {
+    public PdfSettings pdfSettings(@Value("${pdf.pool.size:2}") int poolSize,
+                                   @Value("${pdf.pool.max-renders-per-browser:200}") int maxRendersPerBrowser,
+                                   @Value("${pdf.pool.acquire-timeout-seconds:30}") long acquireTimeoutSeconds,
+                                   @Value("${pdf.pool.render-timeout-seconds:60}") long renderTimeoutSeconds,
+                                   @Value("${pdf.pool.warm-up:true}") boolean warmUp) {
         return PdfSettings.builder()
                 .format("A4")
                 .marginSize("10mm")
                 .printBackground(true)
                 .headless(true)
+                .poolSize(poolSize)
+                .maxRendersPerBrowser(maxRendersPerBrowser)
+                .acquireTimeout(Duration.ofSeconds(acquireTimeoutSeconds))
+                .renderTimeout(Duration.ofSeconds(renderTimeoutSeconds))
+                .warmUp(warmUp)
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,8 @@ package com.example.tagihan.config;
 import lombok.Builder;
 import lombok.Getter;
 
+import java.time.Duration;
+
 @Getter
 @Builder
 public class PdfSettings {
@@ -10,4 +12,25 @@ public class PdfSettings {
     private String marginSize;
     private boolean printBackground;
     private boolean headless;
-}
\ No newline at end of file
+
+    /**
+     * Number of long-lived Chromium instances kept in the pool.
+     */
+    private int poolSize;
+    /**
+     * Renders served by one browser before it is closed and relaunched.
+     */
+    private int maxRendersPerBrowser;
+    /**
+     * How long a caller waits for a free browser before giving up.
+     */
+    private Duration acquireTimeout;
+    /**
+     * Upper bound for a single HTML to PDF render.
+     */
+    private Duration renderTimeout;
+    /**
+     * Launch every browser at startup instead of on first use.
+     */
+    private boolean warmUp;
+}
@@ -0,0 +1,37 @@
+package com.example.tagihan.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.thymeleaf.spring6.templateresolver.SpringResourceTemplateResolver;
+import org.thymeleaf.templatemode.TemplateMode;
+
+/**
+ * Template resolver for the report templates, replacing Spring Boot's default one so the
+ * caching behaviour is stated here rather than inherited. Parsed templates are kept until
+ * the application stops; set {@code pdf.template.cache=false} while editing templates.
+ */
+@Slf4j
+@Configuration
+public class TemplateConfig {
+
+    @Bean
+    public SpringResourceTemplateResolver defaultTemplateResolver(ApplicationContext applicationContext,
+                                                                  @Value("${spring.thymeleaf.prefix:classpath:/templates/}") String prefix,
+                                                                  @Value("${spring.thymeleaf.suffix:.html}") String suffix,
+                                                                  @Value("${pdf.template.cache:true}") boolean cacheable) {
+        SpringResourceTemplateResolver resolver = new SpringResourceTemplateResolver();
+        resolver.setApplicationContext(applicationContext);
+        resolver.setPrefix(prefix);
+        resolver.setSuffix(suffix);
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCheckExistence(true);
+        resolver.setCacheable(cacheable);
+        resolver.setCacheTTLMs(null);
+        log.info("Template resolver {}{}: cache {}", prefix, suffix, cacheable ? "aktif" : "nonaktif");
+        return resolver;
+    }
+}
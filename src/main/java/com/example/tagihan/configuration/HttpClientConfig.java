@@ -0,0 +1,57 @@
+package com.example.tagihan.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Connection pools for the upstreams we call, one per upstream so a slow CSV download can
+ * never take the connections the WhatsApp gateway needs during a reminder burst.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public UpstreamClient gatewayClient(@Value("${http.gateway.max-connections:50}") int maxConnections,
+                                        @Value("${http.gateway.pending-acquire-max:500}") int pendingAcquireMax,
+                                        @Value("${http.gateway.pending-acquire-timeout-seconds:10}") long pendingAcquireTimeoutSeconds,
+                                        @Value("${http.gateway.max-idle-seconds:30}") long maxIdleSeconds,
+                                        @Value("${http.gateway.max-life-minutes:10}") long maxLifeMinutes,
+                                        @Value("${http.gateway.connect-timeout-millis:5000}") long connectTimeoutMillis,
+                                        @Value("${http.gateway.response-timeout-seconds:30}") long responseTimeoutSeconds,
+                                        @Value("${http.gateway.compress:true}") boolean compress) {
+        return new UpstreamClient("gateway", HttpClientSettings.builder()
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofSeconds(pendingAcquireTimeoutSeconds))
+                .maxIdleTime(Duration.ofSeconds(maxIdleSeconds))
+                .maxLifeTime(Duration.ofMinutes(maxLifeMinutes))
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .responseTimeout(Duration.ofSeconds(responseTimeoutSeconds))
+                .compress(compress)
+                .build());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public UpstreamClient downloadsClient(@Value("${http.downloads.max-connections:4}") int maxConnections,
+                                          @Value("${http.downloads.pending-acquire-max:20}") int pendingAcquireMax,
+                                          @Value("${http.downloads.pending-acquire-timeout-seconds:60}") long pendingAcquireTimeoutSeconds,
+                                          @Value("${http.downloads.max-idle-seconds:60}") long maxIdleSeconds,
+                                          @Value("${http.downloads.max-life-minutes:30}") long maxLifeMinutes,
+                                          @Value("${http.downloads.connect-timeout-millis:10000}") long connectTimeoutMillis,
+                                          @Value("${http.downloads.response-timeout-seconds:120}") long responseTimeoutSeconds,
+                                          @Value("${http.downloads.compress:true}") boolean compress) {
+        return new UpstreamClient("downloads", HttpClientSettings.builder()
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofSeconds(pendingAcquireTimeoutSeconds))
+                .maxIdleTime(Duration.ofSeconds(maxIdleSeconds))
+                .maxLifeTime(Duration.ofMinutes(maxLifeMinutes))
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .responseTimeout(Duration.ofSeconds(responseTimeoutSeconds))
+                .compress(compress)
+                .build());
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.tagihan.configuration;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+@Builder
+public class HttpClientSettings {
+
+    /**
+     * Connections kept open to the upstream, busy or idle.
+     */
+    private int maxConnections;
+    /**
+     * Requests allowed to wait for a connection; beyond that a request fails at once.
+     */
+    private int pendingAcquireMaxCount;
+    private Duration pendingAcquireTimeout;
+    /**
+     * Idle connections older than this are closed by the background eviction.
+     */
+    private Duration maxIdleTime;
+    /**
+     * Connections are recycled after this, so DNS and load balancer changes are picked up.
+     */
+    private Duration maxLifeTime;
+    private Duration connectTimeout;
+    /**
+     * Longest silence between two reads of a response.
+     */
+    private Duration responseTimeout;
+    private boolean compress;
+}
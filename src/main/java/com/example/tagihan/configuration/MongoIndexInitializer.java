@@ -0,0 +1,302 @@
+package com.example.tagihan.configuration;
+
+import com.example.tagihan.entity.ConversationState;
+import com.example.tagihan.entity.InboundMessage;
+import com.example.tagihan.entity.OutboxMessage;
+import com.example.tagihan.entity.Visit;
+import com.example.tagihan.repository.VisitRepository;
+import com.example.tagihan.service.VisitService;
+import com.example.tagihan.util.DateRangeUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.repository.query.parser.Part;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the indexes declared on the entities at startup.
+ * Spring Data's automatic index creation is off; the bills generations are indexed by
+ * {@code BillsCollectionManager}, everything else is listed here.
+ * <p>
+ * Once the indexes exist, every query the application runs against the visit collection is
+ * explained, and a plan that scans the whole collection is reported according to
+ * {@code mongo.index.self-check}: {@code warn} (default) logs it, {@code fail} stops startup,
+ * {@code off} skips the check. In {@code fail} mode an index that cannot be created also
+ * stops startup, and the whole bootstrap runs before the web server starts, so a failing
+ * check never leaves webhooks queued behind it.
+ */
+@Slf4j
+@Component
+public class MongoIndexInitializer implements SmartInitializingSingleton {
+
+    private static final List<Class<?>> INDEXED_ENTITIES = List.of(Visit.class, InboundMessage.class, ConversationState.class, OutboxMessage.class);
+
+    private static final Instant SAMPLE_START = Instant.EPOCH;
+    private static final String SAMPLE = "sample";
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\?(\\d+)");
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final String selfCheck;
+
+    public MongoIndexInitializer(ReactiveMongoTemplate mongoTemplate,
+                                 @Value("${mongo.index.self-check:warn}") String selfCheck) {
+        this.mongoTemplate = mongoTemplate;
+        this.selfCheck = selfCheck.trim().toLowerCase();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        ensureIndexes();
+    }
+
+    private void ensureIndexes() {
+        IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+
+        Mono<Void> bootstrap = Flux.fromIterable(INDEXED_ENTITIES)
+                .concatMap(entity -> {
+                    String collectionName = mongoTemplate.getCollectionName(entity);
+                    return Flux.<IndexDefinition>fromIterable(resolver.resolveIndexFor(entity))
+                            .concatMap(definition -> mongoTemplate.indexOps(collectionName).createIndex(definition))
+                            .doOnNext(name -> log.info("Index {} siap di {}", name, collectionName))
+                            .onErrorResume(error -> {
+                                log.error("Gagal membuat index di {}: {}", collectionName, error.getMessage());
+                                if ("fail".equals(selfCheck)) {
+                                    return Flux.error(new IllegalStateException("Gagal membuat index di " + collectionName, error));
+                                }
+                                return Flux.empty();
+                            });
+                })
+                .then(selfCheck());
+
+        if ("fail".equals(selfCheck)) {
+            bootstrap.block(Duration.ofMinutes(2));
+        } else {
+            bootstrap.subscribe(null, error -> log.error("Pemeriksaan index gagal: {}", error.getMessage()));
+        }
+    }
+
+    private Mono<Void> selfCheck() {
+        if ("off".equals(selfCheck)) {
+            return Mono.empty();
+        }
+        String collectionName = mongoTemplate.getCollectionName(Visit.class);
+        return Flux.defer(() -> Flux.fromIterable(visitQueries(Instant.now())))
+                .concatMap(shape -> explain(collectionName, shape)
+                        .map(plan -> new Explained(shape.name(), plan)))
+                .collectList()
+                .flatMap(results -> {
+                    List<String> scans = results.stream()
+                            .filter(result -> "COLLSCAN".equals(result.stage()))
+                            .map(Explained::query)
+                            .toList();
+                    results.forEach(result -> log.info("Plan {} di {}: {}", result.query(), collectionName, result.stage()));
+                    if (scans.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    String message = "Query tanpa index (COLLSCAN) di " + collectionName + ": " + scans;
+                    if ("fail".equals(selfCheck)) {
+                        return Mono.error(new IllegalStateException(message));
+                    }
+                    log.warn(message);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * The queries the application runs against the visit collection, built from the same
+     * sources as the queries themselves: every {@link VisitRepository} method (its
+     * {@code @Query} or its derived name) and {@link VisitService#lknQuery}, with sample values
+     * and mapped to the stored field names and types. Sample dates range up to {@code now}.
+     */
+    private List<QueryShape> visitQueries(Instant now) {
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(Visit.class);
+        QueryMapper mapper = new QueryMapper(mongoTemplate.getConverter());
+
+        List<QueryShape> shapes = new ArrayList<>();
+        Arrays.stream(VisitRepository.class.getDeclaredMethods())
+                .filter(method -> !method.isDefault() && !Modifier.isStatic(method.getModifiers()))
+                .sorted(Comparator.comparing(Method::getName))
+                .forEach(method -> shapes.add(mapped(method.getName(), repositoryQuery(method, now), entity, mapper)));
+        shapes.add(mapped("findForLkn",
+                VisitService.lknQuery(SAMPLE, new DateRangeUtil.DateRange(SAMPLE_START, now), null), entity, mapper));
+        return shapes;
+    }
+
+    private static QueryShape mapped(String name, Query query, MongoPersistentEntity<?> entity, QueryMapper mapper) {
+        Document sort = query.getSortObject();
+        return new QueryShape(name,
+                mapper.getMappedObject(query.getQueryObject(), entity),
+                sort.isEmpty() ? null : mapper.getMappedSort(sort, entity));
+    }
+
+    private static Query repositoryQuery(Method method, Instant now) {
+        org.springframework.data.mongodb.repository.Query annotated =
+                method.getAnnotation(org.springframework.data.mongodb.repository.Query.class);
+        if (annotated != null && !annotated.value().isBlank()) {
+            return annotatedQuery(annotated, method.getParameterTypes(), now);
+        }
+        return derivedQuery(new PartTree(method.getName(), Visit.class), now);
+    }
+
+    /**
+     * Parses the {@code @Query} JSON with every {@code ?n} bound to a sample of the parameter type.
+     */
+    private static Query annotatedQuery(org.springframework.data.mongodb.repository.Query annotated, Class<?>[] parameterTypes,
+                                        Instant now) {
+        Matcher matcher = PLACEHOLDER.matcher(annotated.value());
+        Document filter = (Document) bind(Document.parse(matcher.replaceAll("'__param_$1__'")), parameterTypes, now);
+        Query query = new BasicQuery(filter);
+        if (!annotated.sort().isBlank()) {
+            Document sort = Document.parse(annotated.sort());
+            sort.forEach((field, direction) -> query.with(Sort.by(
+                    ((Number) direction).intValue() < 0 ? Sort.Direction.DESC : Sort.Direction.ASC, field)));
+        }
+        return query;
+    }
+
+    private static Object bind(Object node, Class<?>[] parameterTypes, Instant now) {
+        if (node instanceof Document document) {
+            Document bound = new Document();
+            document.forEach((key, value) -> bound.append(key, bind(value, parameterTypes, now)));
+            return bound;
+        }
+        if (node instanceof List<?> list) {
+            return list.stream().map(value -> bind(value, parameterTypes, now)).toList();
+        }
+        if (node instanceof String text && text.startsWith("__param_") && text.endsWith("__")) {
+            int index = Integer.parseInt(text.substring("__param_".length(), text.length() - 2));
+            return sample(parameterTypes[index], index > 0, now);
+        }
+        return node;
+    }
+
+    /**
+     * Builds the criteria a derived finder produces, the way the repository would read its name.
+     */
+    private static Query derivedQuery(PartTree tree, Instant now) {
+        List<Criteria> alternatives = new ArrayList<>();
+        for (PartTree.OrPart orPart : tree) {
+            List<Criteria> parts = new ArrayList<>();
+            for (Part part : orPart) {
+                String field = part.getProperty().toDotPath();
+                Class<?> type = part.getProperty().getLeafProperty().getType();
+                Criteria criteria = Criteria.where(field);
+                switch (part.getType()) {
+                    case BETWEEN -> criteria.gt(sample(type, false, now)).lt(sample(type, true, now));
+                    case AFTER, GREATER_THAN -> criteria.gt(sample(type, false, now));
+                    case GREATER_THAN_EQUAL -> criteria.gte(sample(type, false, now));
+                    case BEFORE, LESS_THAN -> criteria.lt(sample(type, true, now));
+                    case LESS_THAN_EQUAL -> criteria.lte(sample(type, true, now));
+                    case NEGATING_SIMPLE_PROPERTY -> criteria.ne(sample(type, false, now));
+                    case IN -> criteria.in(sample(type, false, now));
+                    case NOT_IN -> criteria.nin(sample(type, false, now));
+                    case IS_NULL -> criteria.is(null);
+                    case IS_NOT_NULL -> criteria.ne(null);
+                    case EXISTS -> criteria.exists(true);
+                    default -> criteria.is(sample(type, false, now));
+                }
+                parts.add(criteria);
+            }
+            alternatives.add(parts.size() == 1 ? parts.getFirst() : new Criteria().andOperator(parts));
+        }
+
+        Criteria criteria = alternatives.size() == 1 ? alternatives.getFirst() : new Criteria().orOperator(alternatives);
+        return Query.query(criteria).with(tree.getSort());
+    }
+
+    /**
+     * A value of the given type; dates take {@code now} for an upper bound and the start of
+     * the sample range otherwise.
+     */
+    private static Object sample(Class<?> type, boolean upper, Instant now) {
+        Instant instant = upper ? now : SAMPLE_START;
+        if (Instant.class.equals(type)) {
+            return instant;
+        }
+        if (LocalDate.class.equals(type)) {
+            return LocalDate.ofInstant(instant, ZoneOffset.UTC);
+        }
+        if (Date.class.equals(type)) {
+            return Date.from(instant);
+        }
+        if (type.isEnum()) {
+            return type.getEnumConstants()[0];
+        }
+        if (Number.class.isAssignableFrom(type) || type.isPrimitive()) {
+            return 0L;
+        }
+        return SAMPLE;
+    }
+
+    private Mono<String> explain(String collectionName, QueryShape shape) {
+        Document find = new Document("find", collectionName).append("filter", shape.filter());
+        if (shape.sort() != null) {
+            find.append("sort", shape.sort());
+        }
+        return mongoTemplate.executeCommand(new Document("explain", find).append("verbosity", "queryPlanner"))
+                .map(result -> {
+                    Document planner = result.get("queryPlanner", Document.class);
+                    return planner == null ? "UNKNOWN" : scanStage(planner.get("winningPlan"));
+                });
+    }
+
+    /**
+     * COLLSCAN if any stage of the plan scans the collection, otherwise the top stage.
+     */
+    private static String scanStage(Object plan) {
+        if (!(plan instanceof Document stage)) {
+            return "UNKNOWN";
+        }
+        if (containsStage(stage, "COLLSCAN")) {
+            return "COLLSCAN";
+        }
+        Document top = stage.get("queryPlan", Document.class);
+        return String.valueOf((top != null ? top : stage).get("stage"));
+    }
+
+    private static boolean containsStage(Object node, String name) {
+        if (node instanceof Document document) {
+            if (name.equals(document.get("stage"))) {
+                return true;
+            }
+            return document.values().stream().anyMatch(value -> containsStage(value, name));
+        }
+        if (node instanceof List<?> list) {
+            return list.stream().anyMatch(value -> containsStage(value, name));
+        }
+        return false;
+    }
+
+    private record QueryShape(String name, Document filter, Document sort) {
+    }
+
+    private record Explained(String query, String stage) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.tagihan.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Guards the operator endpoints listed in {@code PROTECTED_PATHS} with the shared
+ * {@code ops.token}, sent in the {@code X-Operator-Token} header. Without a configured token
+ * those endpoints are closed; the webhook is not affected.
+ */
+@Slf4j
+@Component
+public class OperatorTokenFilter implements WebFilter {
+
+    public static final String HEADER = "X-Operator-Token";
+    private static final List<String> PROTECTED_PATHS = List.of("/outbox", "/reports", "/visits");
+
+    private final byte[] token;
+
+    public OperatorTokenFilter(@Value("${ops.token:}") String token) {
+        this.token = token.isBlank() ? null : token.getBytes(StandardCharsets.UTF_8);
+        if (this.token == null) {
+            log.warn("ops.token belum diatur, endpoint operator {} ditutup", PROTECTED_PATHS);
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        if (!isProtected(path)) {
+            return chain.filter(exchange);
+        }
+
+        String presented = exchange.getRequest().getHeaders().getFirst(HEADER);
+        if (token == null || presented == null
+                || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("Akses ditolak ke {} dari {}", path, exchange.getRequest().getRemoteAddress());
+            exchange.getResponse().setStatusCode(token == null ? HttpStatus.FORBIDDEN : HttpStatus.UNAUTHORIZED);
+            return exchange.getResponse().setComplete();
+        }
+        return chain.filter(exchange);
+    }
+
+    private static boolean isProtected(String path) {
+        return PROTECTED_PATHS.stream().anyMatch(prefix -> path.equals(prefix) || path.startsWith(prefix + "/"));
+    }
+}
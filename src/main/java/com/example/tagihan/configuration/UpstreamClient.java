@@ -0,0 +1,56 @@
+package com.example.tagihan.configuration;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * A named, pooled HTTP client for one upstream. The pool publishes
+ * {@code reactor.netty.connection.provider.*} gauges (active, idle, pending, total) tagged
+ * with its name.
+ */
+@Slf4j
+public class UpstreamClient {
+
+    private final String name;
+    private final ConnectionProvider connectionProvider;
+    private final ClientHttpConnector connector;
+
+    public UpstreamClient(String name, HttpClientSettings settings) {
+        this.name = name;
+        this.connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(settings.getMaxConnections())
+                .pendingAcquireMaxCount(settings.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(settings.getPendingAcquireTimeout())
+                .maxIdleTime(settings.getMaxIdleTime())
+                .maxLifeTime(settings.getMaxLifeTime())
+                .evictInBackground(settings.getMaxIdleTime())
+                .lifo()
+                .metrics(true)
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) settings.getConnectTimeout().toMillis())
+                .responseTimeout(settings.getResponseTimeout())
+                .keepAlive(true)
+                .compress(settings.isCompress());
+        this.connector = new ReactorClientHttpConnector(httpClient);
+
+        log.info("HTTP client {} siap: maks {} koneksi, {} antrean, idle {}s, timeout connect {}ms / respons {}s",
+                name, settings.getMaxConnections(), settings.getPendingAcquireMaxCount(),
+                settings.getMaxIdleTime().toSeconds(), settings.getConnectTimeout().toMillis(),
+                settings.getResponseTimeout().toSeconds());
+    }
+
+    public ClientHttpConnector connector() {
+        return connector;
+    }
+
+    public void dispose() {
+        log.info("Menutup pool HTTP client {}", name);
+        connectionProvider.dispose();
+    }
+}
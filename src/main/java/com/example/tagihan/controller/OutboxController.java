@@ -0,0 +1,54 @@
+package com.example.tagihan.controller;
+
+import com.example.tagihan.dto.OutboxView;
+import com.example.tagihan.entity.OutboxStatus;
+import com.example.tagihan.service.OutboxService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Operator view of the outgoing message outbox.
+ */
+@RestController
+@RequestMapping("/outbox")
+@RequiredArgsConstructor
+public class OutboxController {
+
+    private final OutboxService outboxService;
+
+    @GetMapping
+    public Mono<Map<OutboxStatus, Long>> summary() {
+        return outboxService.countByStatus();
+    }
+
+    @GetMapping("/dead")
+    public Flux<OutboxView> dead(@RequestParam(defaultValue = "20") int limit) {
+        return outboxService.findDead(limit);
+    }
+
+    @GetMapping("/{idempotencyKey}")
+    public Mono<ResponseEntity<OutboxView>> find(@PathVariable String idempotencyKey) {
+        return outboxService.findByIdempotencyKey(idempotencyKey)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/{idempotencyKey}/retry")
+    public Mono<ResponseEntity<String>> retry(@PathVariable String idempotencyKey) {
+        return outboxService.retry(idempotencyKey)
+                .map(requeued -> requeued
+                        ? ResponseEntity.ok("OK")
+                        : ResponseEntity.status(HttpStatus.NOT_FOUND).body("NOT_DEAD"));
+    }
+}
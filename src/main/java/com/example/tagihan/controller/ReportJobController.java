@@ -0,0 +1,45 @@
+package com.example.tagihan.controller;
+
+import com.example.tagihan.dto.ReportJobView;
+import com.example.tagihan.service.ReportJobService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Status of queued and recently finished report jobs.
+ */
+@RestController
+@RequestMapping("/reports/jobs")
+@RequiredArgsConstructor
+public class ReportJobController {
+
+    private final ReportJobService reportJobService;
+
+    @GetMapping
+    public Flux<ReportJobView> recent() {
+        return reportJobService.recent();
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<ReportJobView>> find(@PathVariable String id) {
+        return reportJobService.find(id)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/{id}/cancel")
+    public Mono<ResponseEntity<String>> cancel(@PathVariable String id) {
+        return reportJobService.cancel(id)
+                .map(cancelled -> cancelled
+                        ? ResponseEntity.ok("OK")
+                        : ResponseEntity.status(HttpStatus.NOT_FOUND).body("NOT_ACTIVE"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.tagihan.controller;
+
+import com.example.tagihan.dto.VisitStatsResponse;
+import com.example.tagihan.service.VisitStatsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * {@code GET /visits/stats?from=2026-01-01&to=2026-01-31&userId=...}; both dates default to
+ * today, {@code userId} to every AO. The range is capped at {@code stats.max-days}.
+ */
+@RestController
+@RequiredArgsConstructor
+public class VisitStatsController {
+
+    private final VisitStatsService visitStatsService;
+
+    @GetMapping("/visits/stats")
+    public Mono<ResponseEntity<VisitStatsResponse>> stats(@RequestParam(required = false)
+                                                           @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                           @RequestParam(required = false)
+                                                           @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                           @RequestParam(required = false) String userId) {
+        LocalDate start = from != null ? from : LocalDate.now(ZoneId.of("Asia/Jakarta"));
+        LocalDate end = to != null ? to : start;
+        if (!visitStatsService.isAllowedRange(start, end)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return Mono.zip(visitStatsService.rollup(start, end, userId).collectList(),
+                        visitStatsService.totals(start, end, userId).collectList())
+                .map(result -> ResponseEntity.ok(new VisitStatsResponse(result.getT1(), result.getT2())));
+    }
+}
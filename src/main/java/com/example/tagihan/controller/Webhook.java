@@ -1,10 +1,11 @@
 package com.example.tagihan.controller;
 
-import com.example.tagihan.dispatcher.WhatsAppMessageDispatcher;
 import com.example.tagihan.dto.WebhookData;
 import com.example.tagihan.dto.WebhookPayload;
+import com.example.tagihan.service.InboundQueueService;
 import com.example.tagihan.service.scheduler.ReminderScheduler;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -12,17 +13,16 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 @Slf4j
 @RestController
 public class Webhook {
 
-    private final WhatsAppMessageDispatcher whatsAppMessageDispatcher;
+    private final InboundQueueService inboundQueueService;
     private final ReminderScheduler reminderScheduler;
 
-    public Webhook(WhatsAppMessageDispatcher whatsAppMessageDispatcher, ReminderScheduler reminderScheduler) {
-        this.whatsAppMessageDispatcher = whatsAppMessageDispatcher;
+    public Webhook(InboundQueueService inboundQueueService, ReminderScheduler reminderScheduler) {
+        this.inboundQueueService = inboundQueueService;
         this.reminderScheduler = reminderScheduler;
     }
 
@@ -32,16 +32,12 @@ public class Webhook {
             return Mono.just(ResponseEntity.ok("OK"));
         }
 
-        whatsAppMessageDispatcher
-                .dispatch(body)
-                .subscribeOn(Schedulers.boundedElastic())
-                .subscribe(
-                        null,
-                        error -> log.error("Error processing webhook: ", error),
-                        () -> log.debug("Webhook processed successfully")
-                );
-
-        return Mono.just(ResponseEntity.ok("OK"));
+        return inboundQueueService.enqueue(body)
+                .map(queued -> ResponseEntity.ok("OK"))
+                .onErrorResume(error -> {
+                    log.error("Error queueing webhook: ", error);
+                    return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("RETRY"));
+                });
     }
     @GetMapping("/")
     public Mono<WebhookData> webhook() {
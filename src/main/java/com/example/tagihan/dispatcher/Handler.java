@@ -8,4 +8,18 @@ import java.lang.annotation.*;
 public @interface Handler {
     String trigger();
 
+    /**
+     * Lane timeout for this command in seconds; 0 uses {@code dispatch.lane-task-timeout-seconds}.
+     * Must be at least as long as the command's own timeouts, or a cut-off can leave its work
+     * half done.
+     */
+    long timeoutSeconds() default 0;
+
+    /**
+     * Whether a failed or timed-out run may be dispatched again. Commands that are not
+     * idempotent set this to {@code false}, so a failure is dead-lettered instead of re-running
+     * the command from scratch.
+     */
+    boolean retryable() default true;
+
 }
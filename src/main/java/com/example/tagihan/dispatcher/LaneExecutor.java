@@ -0,0 +1,142 @@
+package com.example.tagihan.dispatcher;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs work in a fixed number of serial lanes chosen by hashing a key.
+ * Work submitted with the same key runs strictly one after another in submission order;
+ * work for keys on different lanes runs in parallel. Each lane holds at most
+ * {@code laneCapacity} waiting tasks; submitting to a full lane fails fast instead of
+ * queueing without bound. A task running longer than its timeout ({@code taskTimeout} unless
+ * given on submit) is failed so it cannot stall its lane.
+ */
+@Slf4j
+public class LaneExecutor {
+
+    private final String name;
+    private final Duration taskTimeout;
+    private final Lane[] lanes;
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    public LaneExecutor(String name, int laneCount, int laneCapacity, Duration taskTimeout, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.taskTimeout = taskTimeout;
+        this.lanes = new Lane[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(Math.max(1, laneCapacity));
+            subscriptions.add(lanes[i].start());
+        }
+
+        Gauge.builder(name + ".lanes.busy", this, LaneExecutor::busyLanes)
+                .description("Lanes that are running or holding work")
+                .register(meterRegistry);
+        Gauge.builder(name + ".lanes.queued", this, LaneExecutor::queuedTasks)
+                .description("Tasks submitted to a lane and not finished yet")
+                .register(meterRegistry);
+        Gauge.builder(name + ".lanes.max_depth", this, LaneExecutor::maxLaneDepth)
+                .description("Occupancy of the fullest lane")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code work} on the lane of {@code key} once everything submitted to that lane before
+     * it has finished. The work is submitted when the returned Mono is subscribed.
+     */
+    public <T> Mono<T> submit(String key, Supplier<Mono<T>> work) {
+        return submit(key, taskTimeout, work);
+    }
+
+    public <T> Mono<T> submit(String key, Duration timeout, Supplier<Mono<T>> work) {
+        return Mono.defer(() -> {
+            Lane lane = lanes[Math.floorMod(key == null ? 0 : key.hashCode(), lanes.length)];
+            Sinks.One<T> result = Sinks.one();
+
+            Mono<Void> task = Mono.defer(work)
+                    .timeout(timeout)
+                    .doOnSuccess(value -> {
+                        if (value == null) {
+                            result.tryEmitEmpty();
+                        } else {
+                            result.tryEmitValue(value);
+                        }
+                    })
+                    .doOnError(result::tryEmitError)
+                    .onErrorResume(error -> Mono.empty())
+                    .then();
+
+            if (!lane.offer(task)) {
+                return Mono.error(new LaneFullException(
+                        "Lane " + name + " penuh untuk " + key + ", coba lagi nanti"));
+            }
+            return result.asMono();
+        });
+    }
+
+    public void shutdown() {
+        subscriptions.dispose();
+    }
+
+    private int busyLanes() {
+        return (int) Arrays.stream(lanes).filter(lane -> lane.occupancy.get() > 0).count();
+    }
+
+    private int queuedTasks() {
+        return Arrays.stream(lanes).mapToInt(lane -> lane.occupancy.get()).sum();
+    }
+
+    private int maxLaneDepth() {
+        return Arrays.stream(lanes).mapToInt(lane -> lane.occupancy.get()).max().orElse(0);
+    }
+
+    /**
+     * The lane of the key was full; the work was not submitted.
+     */
+    public static final class LaneFullException extends IllegalStateException {
+
+        public LaneFullException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Lane {
+
+        private final Sinks.Many<Mono<Void>> sink;
+        private final AtomicInteger occupancy = new AtomicInteger();
+
+        private Lane(int capacity) {
+            this.sink = Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(capacity));
+        }
+
+        private Disposable start() {
+            return sink.asFlux()
+                    .concatMap(task -> task.doFinally(signal -> occupancy.decrementAndGet()), 1)
+                    .subscribe();
+        }
+
+        private boolean offer(Mono<Void> task) {
+            occupancy.incrementAndGet();
+            Sinks.EmitResult emitResult;
+            synchronized (this) {
+                emitResult = sink.tryEmitNext(task);
+            }
+            if (emitResult.isFailure()) {
+                occupancy.decrementAndGet();
+                log.warn("Task rejected by lane: {}", emitResult);
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package com.example.tagihan.dispatcher;
 
 import com.example.tagihan.dto.WebhookPayload;
+import com.example.tagihan.exception.NonRetryableDispatchException;
 import com.example.tagihan.handler.state.CompletedVisitState;
 import com.example.tagihan.service.State;
 import com.example.tagihan.service.StateData;
 import com.example.tagihan.service.StateService;
 import com.example.tagihan.util.CaptionFindUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,7 +17,9 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -28,16 +33,32 @@ public class WhatsAppMessageDispatcher {
     @Value("${message.prefix}")
     private String messagePrefix;
 
+    @Value("${dispatch.lanes:16}")
+    private int laneCount;
+
+    @Value("${dispatch.lane-capacity:100}")
+    private int laneCapacity;
+
+    @Value("${dispatch.lane-task-timeout-seconds:300}")
+    private long laneTaskTimeoutSeconds;
+
     private final ApplicationContext applicationContext;
     private final Set<String> processingMessages = ConcurrentHashMap.newKeySet();
 
     private final Map<String, Function<WebhookPayload, Mono<Void>>> config = new HashMap<>();
+    private final Map<String, Duration> timeouts = new HashMap<>();
+    private final Set<String> nonRetryable = new HashSet<>();
     private final StateService stateService;
     private final StateDispatcher stateDispatcher;
     private final CompletedVisitState completedVisitState;
+    private final MeterRegistry meterRegistry;
+    private LaneExecutor lanes;
 
     @PostConstruct
     public void init() {
+        lanes = new LaneExecutor("dispatch", laneCount, laneCapacity,
+                Duration.ofSeconds(laneTaskTimeoutSeconds), meterRegistry);
+
         Map<String, Object> beans = applicationContext.getBeansWithAnnotation(Handler.class);
         beans.forEach((name, bean) -> {
             Handler handler = bean.getClass().getAnnotation(Handler.class);
@@ -46,12 +67,23 @@ public class WhatsAppMessageDispatcher {
             if (trigger != null && !trigger.isEmpty()) {
                 if (bean instanceof MessageHandler) {
                     config.put(trigger, ((MessageHandler) bean)::handle);
+                    if (handler.timeoutSeconds() > 0) {
+                        timeouts.put(trigger, Duration.ofSeconds(handler.timeoutSeconds()));
+                    }
+                    if (!handler.retryable()) {
+                        nonRetryable.add(trigger);
+                    }
                 } else {
                     log.warn("Handler {} does not implement MessageHandler", name);
                 }
             }
         });
     }
+    @PreDestroy
+    public void shutdown() {
+        lanes.shutdown();
+    }
+
     public Mono<Void> handle(StateData stateData) {
         if (stateData.getCurrentState().equals(State.COMPLETED)) {
             return completedVisitState.handle(stateData).then();
@@ -59,7 +91,49 @@ public class WhatsAppMessageDispatcher {
         return Mono.empty();
     }
 
+    /**
+     * Messages from the same sender are handled one at a time, so a quick follow-up cannot race
+     * the previous message through the user's state. Different senders are handled in parallel.
+     * Arrival order is kept by {@code InboundQueueService}, which only claims a sender's next
+     * message once the earlier ones have been dispatched.
+     * <p>
+     * Handler errors and lane timeouts are propagated so the inbound queue can retry or
+     * dead-letter the message; for a command that is not retryable they are wrapped in
+     * {@link NonRetryableDispatchException}. A full lane never started the command and stays
+     * retryable.
+     */
     public Mono<Long> dispatch(WebhookPayload message) {
+        String from = message.getPayload().getFrom();
+        String command = command(message);
+        return lanes.submit(from, laneTimeout(command), () -> stateService.resume(from)
+                        .then(Mono.defer(() -> dispatchInLane(message))))
+                .onErrorMap(error -> command != null && nonRetryable.contains(command)
+                                && !(error instanceof LaneExecutor.LaneFullException),
+                        error -> new NonRetryableDispatchException(
+                                "Perintah " + command + " gagal dan tidak diulang: " + error.getMessage(), error));
+    }
+
+    /**
+     * The command of a prefixed caption, or {@code null} for any other message.
+     */
+    private String command(WebhookPayload message) {
+        String caption = CaptionFindUtil.caption(message);
+        if (caption == null || !caption.startsWith(messagePrefix)) {
+            return null;
+        }
+        return caption.split(" ", 2)[0].substring(messagePrefix.length());
+    }
+
+    /**
+     * The timeout declared by the command's handler, so long admin commands are not cut off
+     * by the default lane timeout.
+     */
+    private Duration laneTimeout(String command) {
+        Duration fallback = Duration.ofSeconds(laneTaskTimeoutSeconds);
+        return command == null ? fallback : timeouts.getOrDefault(command, fallback);
+    }
+
+    private Mono<Long> dispatchInLane(WebhookPayload message) {
         String caption = CaptionFindUtil.caption(message);
         log.info("Caption: {}", caption);
         log.info("Processing message From: {}", message.getPayload().getFrom());
@@ -100,10 +174,7 @@ public class WhatsAppMessageDispatcher {
         }
 
         return handler.apply(message)
-                .onErrorResume(error -> {
-                    log.error("Error handling command: {}", command, error);
-                    return Mono.empty();
-                })
+                .doOnError(error -> log.error("Error handling command: {}", command, error))
                 .then(Mono.defer(() -> Mono.just(0L)))
                 .doFinally(signalType -> processingMessages.remove(messageId));
     }
@@ -0,0 +1,30 @@
+package com.example.tagihan.dto;
+
+import com.example.tagihan.service.BillsIngestMode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BillsSyncResult {
+
+    private BillsIngestMode mode;
+    private long saved;
+    private long failed;
+    private long added;
+    private long changed;
+    private long removed;
+    private long unchanged;
+    /**
+     * SPKs missing from the file that a DELTA run left in place because the file was incomplete.
+     */
+    private long removalsSkipped;
+    private Duration duration;
+    private CsvIngestReport report;
+}
@@ -0,0 +1,25 @@
+package com.example.tagihan.dto;
+
+import lombok.Data;
+
+/**
+ * Totals of one {@code BillsBulkWriter} run.
+ */
+@Data
+public class BillsWriteStats {
+
+    private long inserted;
+    private long updated;
+    private long failed;
+    /**
+     * Distinct SPKs handed to the writer. Unlike {@link #inserted}, this does not depend on
+     * whether a retried batch had already been applied.
+     */
+    private long distinctSpks;
+    private int batches;
+    private int finalBatchSize;
+
+    public long getWritten() {
+        return inserted + updated;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.tagihan.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-run outcome of a CSV ingest: how many rows were read, accepted and rejected,
+ * plus a bounded sample of the problems found so a bad file can be diagnosed
+ * without scanning the logs.
+ */
+public class CsvIngestReport {
+
+    private static final int MAX_SAMPLED_ERRORS = 20;
+
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsAccepted = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private final AtomicLong fieldErrors = new AtomicLong();
+    private final AtomicLong inputErrors = new AtomicLong();
+    private final List<String> sampledErrors = Collections.synchronizedList(new ArrayList<>());
+
+    public void rowRead() {
+        rowsRead.incrementAndGet();
+    }
+
+    public void rowAccepted() {
+        rowsAccepted.incrementAndGet();
+    }
+
+    public void rowRejected(long recordNumber, String reason) {
+        rowsRejected.incrementAndGet();
+        sample("Baris " + recordNumber + ": " + reason);
+    }
+
+    public void fieldError(long recordNumber, String column, String value) {
+        fieldErrors.incrementAndGet();
+        sample("Baris " + recordNumber + ": kolom " + column + " bukan angka (" + value + ")");
+    }
+
+    public void inputError(String reason) {
+        inputErrors.incrementAndGet();
+        sample(reason);
+    }
+
+    private void sample(String error) {
+        if (sampledErrors.size() < MAX_SAMPLED_ERRORS) {
+            sampledErrors.add(error);
+        }
+    }
+
+    public long getRowsRead() {
+        return rowsRead.get();
+    }
+
+    public long getRowsAccepted() {
+        return rowsAccepted.get();
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected.get();
+    }
+
+    public long getFieldErrors() {
+        return fieldErrors.get();
+    }
+
+    public List<String> getSampledErrors() {
+        synchronized (sampledErrors) {
+            return List.copyOf(sampledErrors);
+        }
+    }
+
+    /**
+     * Whether some rows of the file never became bills (rejected, or lost to a broken input),
+     * so the accepted rows are not the whole file.
+     */
+    public boolean isIncomplete() {
+        return rowsRejected.get() > 0 || inputErrors.get() > 0;
+    }
+
+    public boolean hasErrors() {
+        return rowsRejected.get() > 0 || fieldErrors.get() > 0 || !sampledErrors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "read=" + rowsRead.get()
+                + ", accepted=" + rowsAccepted.get()
+                + ", rejected=" + rowsRejected.get()
+                + ", fieldErrors=" + fieldErrors.get();
+    }
+}
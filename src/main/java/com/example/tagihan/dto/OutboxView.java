@@ -0,0 +1,22 @@
+package com.example.tagihan.dto;
+
+import com.example.tagihan.entity.OutboxStatus;
+
+import java.time.Instant;
+
+/**
+ * Operator view of an outbox message, without its document content.
+ */
+public record OutboxView(
+        String id,
+        String idempotencyKey,
+        WhatsAppMessageType type,
+        String phone,
+        OutboxStatus status,
+        int attempts,
+        Instant createdAt,
+        Instant nextAttemptAt,
+        Instant sentAt,
+        String lastError
+) {
+}
@@ -0,0 +1,16 @@
+package com.example.tagihan.dto;
+
+/**
+ * The fields of a visit the morning reminder needs; used as a query projection so the
+ * rest of the document is never read.
+ */
+public record ReminderVisit(
+        String id,
+        String userId,
+        String spk,
+        String name,
+        String address,
+        Long appointment,
+        String note
+) {
+}
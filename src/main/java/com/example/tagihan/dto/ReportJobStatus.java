@@ -0,0 +1,9 @@
+package com.example.tagihan.dto;
+
+public enum ReportJobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED
+}
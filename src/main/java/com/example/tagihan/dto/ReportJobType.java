@@ -0,0 +1,6 @@
+package com.example.tagihan.dto;
+
+public enum ReportJobType {
+    LKN,
+    RKH
+}
@@ -0,0 +1,24 @@
+package com.example.tagihan.dto;
+
+import java.time.Instant;
+
+/**
+ * Snapshot of a report job.
+ *
+ * @param queueMillis time from submission to start, or so far if the job is still queued
+ * @param runMillis   time from start to finish, or so far if the job is still running
+ */
+public record ReportJobView(
+        String id,
+        ReportJobType type,
+        String filters,
+        String requester,
+        ReportJobStatus status,
+        Instant submittedAt,
+        Instant startedAt,
+        Instant finishedAt,
+        Long queueMillis,
+        Long runMillis,
+        String error
+) {
+}
@@ -0,0 +1,9 @@
+package com.example.tagihan.dto;
+
+/**
+ * Order in which queued WhatsApp sends go out; interactive replies overtake bulk sends.
+ */
+public enum SendPriority {
+    INTERACTIVE,
+    BULK
+}
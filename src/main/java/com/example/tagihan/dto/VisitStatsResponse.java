@@ -0,0 +1,13 @@
+package com.example.tagihan.dto;
+
+import java.util.List;
+
+/**
+ * Body of {@code GET /visits/stats}: the per-day rows plus the per-AO totals over the range,
+ * which cannot be summed from the rows since an SPK may appear in several of them.
+ */
+public record VisitStatsResponse(
+        List<VisitStatsRow> rows,
+        List<VisitStatsTotal> totals
+) {
+}
@@ -0,0 +1,26 @@
+package com.example.tagihan.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Visit figures of one AO for one day and one visit type. SPKs and their dues count once per
+ * row, so they must not be summed across rows; see {@link VisitStatsTotal} for range totals.
+ *
+ * @param spkCount       distinct SPKs visited within this row
+ * @param appointments   visits that ended with a janji bayar
+ * @param dueTotal       minimum payment (bunga + pokok) due on the visited SPKs, from the bills
+ * @param collectionRate {@code appointmentTotal / dueTotal}, or {@code null} when nothing is due
+ */
+public record VisitStatsRow(
+        String userId,
+        String accountOfficer,
+        LocalDate date,
+        String visitType,
+        long visits,
+        long spkCount,
+        long appointments,
+        long appointmentTotal,
+        long dueTotal,
+        Double collectionRate
+) {
+}
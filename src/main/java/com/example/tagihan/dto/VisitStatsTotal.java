@@ -0,0 +1,19 @@
+package com.example.tagihan.dto;
+
+/**
+ * Visit figures of one AO, or of every AO when {@code userId} is {@code null}, over a whole
+ * date range. Each SPK counts once however often it was visited.
+ *
+ * @param spkCount       distinct SPKs visited in the range
+ * @param dueTotal       minimum payment (bunga + pokok) due on those SPKs, from the bills
+ * @param collectionRate {@code appointmentTotal / dueTotal}, or {@code null} when nothing is due
+ */
+public record VisitStatsTotal(
+        String userId,
+        String accountOfficer,
+        long spkCount,
+        long appointmentTotal,
+        long dueTotal,
+        Double collectionRate
+) {
+}
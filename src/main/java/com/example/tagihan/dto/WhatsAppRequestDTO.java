@@ -1,12 +1,15 @@
 package com.example.tagihan.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
 
 @Data
 @AllArgsConstructor
@@ -41,5 +44,16 @@ public class WhatsAppRequestDTO {
 
 	private transient MultipartFile multipartFile;
 	private transient Resource resource;
+	/**
+	 * Document content streamed into the multipart body, named {@link #fileName}.
+	 */
+	@JsonIgnore
+	private transient Flux<DataBuffer> content;
+	@JsonIgnore
+	private transient String fileName;
 	private transient WhatsAppMessageType type;
+
+	@JsonIgnore
+	@Builder.Default
+	private transient SendPriority priority = SendPriority.INTERACTIVE;
 }
@@ -2,6 +2,7 @@ package com.example.tagihan.entity;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "bills")
@@ -29,6 +30,7 @@ public class Bills {
     /**
      * The SPK (Surat Perjanjian Kredit) number, acting as the primary key.
      */
+    @Indexed(unique = true)
     private String noSpk;
     /**
      * The location of the office handling the bill.
@@ -61,6 +63,7 @@ public class Bills {
     /**
      * The collection status of the bill.
      */
+    @Indexed
     private String collectStatus;
     /**
      * The number of days late.
@@ -121,6 +124,7 @@ public class Bills {
     /**
      * The account officer assigned to this bill.
      */
+    @Indexed
     private String accountOfficer;
     /**
      * The kios associated with the bill.
@@ -134,4 +138,8 @@ public class Bills {
      * The fixed interest amount.
      */
     private Long fixedInterest;
+    /**
+     * Hash of the source CSV row, used to detect changed rows on delta sync.
+     */
+    private Long contentHash;
 }
\ No newline at end of file
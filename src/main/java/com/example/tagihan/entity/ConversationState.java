@@ -0,0 +1,35 @@
+package com.example.tagihan.entity;
+
+import com.example.tagihan.service.State;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Persisted copy of a user's in-progress conversation, keyed by JID.
+ */
+@Document(collection = "conversation_state")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ConversationState {
+
+    @Id
+    private String jid;
+
+    private State currentState;
+    private Visit visit;
+    private long version;
+
+    /**
+     * Conversations untouched for 30 minutes are dropped by MongoDB, matching the default
+     * {@code state.ttl-minutes}; loading also ignores documents older than the configured TTL.
+     */
+    @Indexed(expireAfter = "30m")
+    private Instant updatedAt;
+}
@@ -0,0 +1,63 @@
+package com.example.tagihan.entity;
+
+import com.example.tagihan.dto.WebhookPayload;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * A webhook message waiting for, or done with, dispatch.
+ * The id is the WhatsApp message id, so a redelivered webhook is stored only once.
+ */
+@Document(collection = "inbound_message")
+@CompoundIndex(name = "status_nextAttemptAt", def = "{'status': 1, 'nextAttemptAt': 1}")
+@CompoundIndex(name = "sender_receivedAt", def = "{'sender': 1, 'receivedAt': 1}")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class InboundMessage {
+
+    @Id
+    private String id;
+
+    private WebhookPayload payload;
+    /**
+     * The sender's JID; a sender's messages are claimed one at a time in {@code receivedAt} order.
+     */
+    private String sender;
+    private InboundStatus status;
+    private int attempts;
+    private Instant receivedAt;
+    /**
+     * Earliest time a PENDING message may be claimed again after a failed attempt.
+     */
+    private Instant nextAttemptAt;
+    /**
+     * Claim lease of a PROCESSING message; once it passes the message is considered abandoned
+     * (e.g. the instance died mid-dispatch) and is claimed again.
+     */
+    private Instant lockedUntil;
+    /**
+     * Identifies the current claim; renewing the lease and completing the message only apply
+     * while it still matches.
+     */
+    private String claimToken;
+    /**
+     * Set once the handler has returned while the message still waits for its report job; the
+     * sender's next message no longer waits for it.
+     */
+    private Instant dispatchedAt;
+    private String lastError;
+
+    /**
+     * Set when the message reaches DONE; finished messages are purged a week later.
+     */
+    @Indexed(expireAfter = "7d")
+    private Instant completedAt;
+}
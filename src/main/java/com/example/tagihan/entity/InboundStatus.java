@@ -0,0 +1,9 @@
+package com.example.tagihan.entity;
+
+public enum InboundStatus {
+
+    PENDING,
+    PROCESSING,
+    DONE,
+    DEAD
+}
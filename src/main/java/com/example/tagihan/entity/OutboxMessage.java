@@ -0,0 +1,64 @@
+package com.example.tagihan.entity;
+
+import com.example.tagihan.dto.SendPriority;
+import com.example.tagihan.dto.WhatsAppMessageType;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * An outgoing WhatsApp message waiting for, or done with, delivery to the gateway.
+ * The idempotency key names the business event the message belongs to (a reminder of a
+ * visit on a day, the report answering an inbound message), so enqueueing it twice
+ * stores and sends it once.
+ */
+@Document(collection = "outbox")
+@CompoundIndex(name = "status_nextAttemptAt", def = "{'status': 1, 'nextAttemptAt': 1}")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OutboxMessage {
+
+    @Id
+    private String id;
+
+    @Indexed(unique = true)
+    private String idempotencyKey;
+
+    private WhatsAppMessageType type;
+    private SendPriority priority;
+    private String phone;
+    private String message;
+    private String caption;
+    private String documentName;
+    /**
+     * GridFS id of the spooled document, see {@code DocumentSpool}; removed once the message is sent.
+     */
+    private String documentId;
+
+    private OutboxStatus status;
+    private int attempts;
+    private Instant createdAt;
+    /**
+     * Earliest time a PENDING message may be claimed again after a failed attempt.
+     */
+    private Instant nextAttemptAt;
+    /**
+     * Claim lease of a SENDING message; once it passes the send is considered abandoned and
+     * the message is claimed again.
+     */
+    private Instant lockedUntil;
+    private String lastError;
+
+    /**
+     * Set when the gateway accepted the message; sent messages are purged a week later.
+     */
+    @Indexed(expireAfter = "7d")
+    private Instant sentAt;
+}
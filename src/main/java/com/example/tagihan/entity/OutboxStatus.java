@@ -0,0 +1,9 @@
+package com.example.tagihan.entity;
+
+public enum OutboxStatus {
+
+    PENDING,
+    SENDING,
+    SENT,
+    DEAD
+}
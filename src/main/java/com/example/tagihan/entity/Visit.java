@@ -3,12 +3,19 @@ package com.example.tagihan.entity;
 import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
 import java.time.LocalDate;
 
 @Document(collection = "visit")
+@CompoundIndex(name = "visitDate_userId", def = "{'visitDate': 1, 'userId': 1}")
+@CompoundIndex(name = "userId_visitDate", def = "{'userId': 1, 'visitDate': 1}")
+@CompoundIndex(name = "spk_visitType_visitDate", def = "{'spk': 1, 'visitType': 1, 'visitDate': 1}")
+@CompoundIndex(name = "visitType_visitDate", def = "{'visitType': 1, 'visitDate': 1}")
 @Getter
 @Setter
 @AllArgsConstructor
@@ -19,6 +26,9 @@ public class Visit {
     @Id
     private String id;
 
+    @Version
+    private Long version;
+
     private String userId;
     private VisitType visitType;
 
@@ -35,6 +45,7 @@ public class Visit {
     private String note;
     private String imageUrl;
     private Long appointment;
+    @Indexed(sparse = true)
     private LocalDate reminderDate;
     private String usaha;
     private String interested;
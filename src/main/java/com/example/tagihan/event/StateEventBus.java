@@ -0,0 +1,183 @@
+package com.example.tagihan.event;
+
+import com.example.tagihan.dispatcher.LaneExecutor;
+import com.example.tagihan.entity.Visit;
+import com.example.tagihan.service.State;
+import com.example.tagihan.service.StateData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Delivers state transitions to the subscriber off the publishing thread.
+ * Transitions of one user are delivered in order, on a serial lane keyed by JID; the number of
+ * lanes bounds how many deliveries (WhatsApp prompts) run at once. When a user moves through
+ * several states before the previous prompt went out, only the latest one is delivered.
+ * {@link State#COMPLETED} is never coalesced away, since delivering it saves the visit: when
+ * its lane is full it is offered again for up to {@code state.events.completed-retry-seconds},
+ * and the user's later events are held back until it is in its lane so they cannot overtake
+ * it. If it still finds no room it is counted in {@code state.events.completed_failed} and
+ * logged with its SPK, and the held events go ahead.
+ */
+@Slf4j
+@Component
+public class StateEventBus {
+
+    private static final Duration LANE_FULL_RETRY_DELAY = Duration.ofMillis(200);
+
+    private final LaneExecutor lanes;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    /**
+     * Events published while a COMPLETED of the same user waits for room in its lane; guarded by
+     * itself.
+     */
+    private final Map<String, Deque<Pending>> held = new HashMap<>();
+    private final long completedRetries;
+    private final Timer lag;
+    private final Counter coalesced;
+    private final Counter dropped;
+    private final Counter completedFailed;
+    private volatile Function<StateChangedEvent, Mono<Void>> subscriber;
+
+    public StateEventBus(MeterRegistry meterRegistry,
+                         @Value("${state.events.lanes:8}") int laneCount,
+                         @Value("${state.events.lane-capacity:50}") int laneCapacity,
+                         @Value("${state.events.task-timeout-seconds:60}") long taskTimeoutSeconds,
+                         @Value("${state.events.completed-retry-seconds:30}") long completedRetrySeconds) {
+        this.lanes = new LaneExecutor("state.events", laneCount, laneCapacity,
+                Duration.ofSeconds(taskTimeoutSeconds), meterRegistry);
+        this.lag = Timer.builder("state.events.lag")
+                .description("Time from a state transition to the start of its delivery")
+                .register(meterRegistry);
+        this.coalesced = meterRegistry.counter("state.events.coalesced");
+        this.dropped = meterRegistry.counter("state.events.dropped");
+        this.completedFailed = meterRegistry.counter("state.events.completed_failed");
+        this.completedRetries = Math.max(1, completedRetrySeconds * 1000 / LANE_FULL_RETRY_DELAY.toMillis());
+    }
+
+    public void subscribe(Function<StateChangedEvent, Mono<Void>> subscriber) {
+        this.subscriber = subscriber;
+    }
+
+    public void publish(Object source, String jid, StateData stateData) {
+        StateData snapshot = StateData.builder()
+                .currentState(stateData.getCurrentState())
+                .visit(stateData.getVisit())
+                .build();
+        Pending event = new Pending(new StateChangedEvent(source, snapshot), System.nanoTime());
+        synchronized (held) {
+            route(jid, event);
+        }
+    }
+
+    private void route(String jid, Pending event) {
+        Deque<Pending> backlog = held.get(jid);
+        if (backlog != null) {
+            backlog.add(event);
+            return;
+        }
+
+        StateData snapshot = event.event().getStateData();
+        if (snapshot.getCurrentState() == State.COMPLETED) {
+            pending.remove(jid);
+            held.put(jid, new ArrayDeque<>());
+            submitCompleted(jid, event);
+            return;
+        }
+
+        if (pending.put(jid, event) != null) {
+            coalesced.increment();
+            log.debug("State event for {} coalesced into {}", jid, snapshot.getCurrentState());
+            return;
+        }
+        submit(jid, () -> {
+            Pending latest = pending.remove(jid);
+            return latest != null ? deliver(latest) : Mono.empty();
+        });
+    }
+
+    private void submitCompleted(String jid, Pending event) {
+        lanes.submit(jid, () -> Mono.defer(() -> {
+                            release(jid);
+                            return deliver(event);
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .retryWhen(Retry.fixedDelay(completedRetries, LANE_FULL_RETRY_DELAY)
+                        .filter(LaneExecutor.LaneFullException.class::isInstance)
+                        .doBeforeRetry(signal -> {
+                            if (signal.totalRetries() == 0) {
+                                log.warn("Lane penuh, COMPLETED untuk {} menunggu tempat", jid);
+                            }
+                        }))
+                .subscribe(null, error -> {
+                    if (Exceptions.isRetryExhausted(error)) {
+                        completedFailed.increment();
+                        Visit visit = event.event().getStateData().getVisit();
+                        log.error("COMPLETED untuk {} tidak mendapat tempat di lane, kunjungan SPK {} tidak tersimpan",
+                                jid, visit != null ? visit.getSpk() : null);
+                        release(jid);
+                        return;
+                    }
+                    log.error("State event delivery for {} failed: {}", jid, error.getMessage());
+                });
+    }
+
+    /**
+     * Lets the events held behind a COMPLETED go ahead, in the order they were published.
+     */
+    private void release(String jid) {
+        synchronized (held) {
+            Deque<Pending> backlog = held.remove(jid);
+            if (backlog != null) {
+                backlog.forEach(event -> route(jid, event));
+            }
+        }
+    }
+
+    private void submit(String jid, Supplier<Mono<Void>> delivery) {
+        lanes.submit(jid, () -> Mono.defer(delivery).subscribeOn(Schedulers.boundedElastic()))
+                .subscribe(null, error -> {
+                    pending.remove(jid);
+                    if (error instanceof LaneExecutor.LaneFullException) {
+                        dropped.increment();
+                    }
+                    log.error("State event delivery for {} failed: {}", jid, error.getMessage());
+                });
+    }
+
+    private Mono<Void> deliver(Pending event) {
+        lag.record(System.nanoTime() - event.publishedAt(), TimeUnit.NANOSECONDS);
+        Function<StateChangedEvent, Mono<Void>> target = subscriber;
+        if (target == null) {
+            log.warn("No subscriber for state events, dropping {}", event.event().getStateData().getCurrentState());
+            return Mono.empty();
+        }
+        return target.apply(event.event());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.shutdown();
+    }
+
+    private record Pending(StateChangedEvent event, long publishedAt) {
+    }
+}
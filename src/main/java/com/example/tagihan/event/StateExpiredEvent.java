@@ -0,0 +1,24 @@
+package com.example.tagihan.event;
+
+import com.example.tagihan.service.StateData;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when a conversation is dropped from the state store without being finished,
+ * either because it sat idle too long or because the store was full.
+ */
+@Getter
+public class StateExpiredEvent extends ApplicationEvent {
+
+    private final String jid;
+    private final StateData stateData;
+    private final boolean idle;
+
+    public StateExpiredEvent(Object source, String jid, StateData stateData, boolean idle) {
+        super(source);
+        this.jid = jid;
+        this.stateData = stateData;
+        this.idle = idle;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.tagihan.exception;
+
+public class NonRetryableDispatchException extends RuntimeException {
+    public NonRetryableDispatchException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.tagihan.exception;
+
+public class ReportQueueFullException extends RuntimeException {
+    public ReportQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -1,15 +1,20 @@
 package com.example.tagihan.handler;
 
+import com.example.tagihan.dto.ReportJobType;
 import com.example.tagihan.dto.WhatsAppMessageType;
+import com.example.tagihan.exception.ReportQueueFullException;
 import com.example.tagihan.dto.WhatsAppRequestDTO;
+import com.example.tagihan.service.OutboxService;
+import com.example.tagihan.service.ReportJobService;
 import com.example.tagihan.service.WhatsappService;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.mock.web.MockMultipartFile;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 @Slf4j
 public abstract class BaseReportHandler {
@@ -20,9 +25,28 @@ public abstract class BaseReportHandler {
     protected static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
 
     protected final WhatsappService whatsappService;
+    protected final OutboxService outboxService;
+    protected final ReportJobService reportJobService;
 
-    protected BaseReportHandler(WhatsappService whatsappService) {
+    protected BaseReportHandler(WhatsappService whatsappService, OutboxService outboxService,
+                                ReportJobService reportJobService) {
         this.whatsappService = whatsappService;
+        this.outboxService = outboxService;
+        this.reportJobService = reportJobService;
+    }
+
+    /**
+     * Queues the report as a background job and acknowledges the request right away; the
+     * PDF follows once the job has run.
+     */
+    protected Mono<Void> submitReportJob(ReportJobType type, String filters, String requester, String chatId,
+                                         String requestId, Supplier<Mono<Void>> work) {
+        return reportJobService.submit(type, filters, requester, requestId, work)
+                .flatMap(submission -> sendTextMessage(chatId, submission.deduplicated()
+                        ? String.format("⏳ Laporan %s yang sama masih diproses, mohon tunggu.", type)
+                        : String.format("⏳ Laporan %s sedang diproses, PDF akan dikirim setelah selesai.", type)))
+                .onErrorResume(ReportQueueFullException.class, e -> sendTextMessage(chatId,
+                        "Antrian laporan sedang penuh, silakan coba lagi beberapa saat lagi."));
     }
 
     protected Mono<Void> sendTextMessage(String jid, String message) {
@@ -42,42 +66,26 @@ public abstract class BaseReportHandler {
                 });
     }
 
-    protected Mono<Void> sendPdfDocument(String jid, byte[] pdfBytes, String accountOfficer, String identifier, String documentType) {
-        return Mono.fromCallable(() -> createPdfFile(pdfBytes, identifier, documentType))
-                .flatMap(pdfFile -> {
-                    WhatsAppRequestDTO request = buildPdfRequest(jid, pdfFile, accountOfficer, documentType);
-                    return whatsappService.sendDocument(request);
-                })
-                .doOnNext(response -> logPdfSendResult(jid, response.getCode(), response.getMessage()))
+    /**
+     * Hands the PDF to the outbox, keyed by the inbound message it answers, so a redelivered or
+     * retried request does not send the report twice.
+     */
+    protected Mono<Void> sendPdfDocument(String jid, String requestId, byte[] pdfBytes, String accountOfficer,
+                                         String identifier, String documentType) {
+        String idempotencyKey = documentType.toLowerCase() + ":" + (requestId != null ? requestId : UUID.randomUUID());
+        return outboxService.enqueueDocument(idempotencyKey, jid, buildPdfCaption(accountOfficer, documentType),
+                        buildPdfFilename(identifier, documentType), pdfBytes)
+                .doOnNext(queued -> log.info("PDF {} for {} queued in outbox: {}", documentType, jid, queued.getStatus()))
                 .then()
                 .onErrorResume(e -> {
-                    log.error("Error sending PDF document to {}", jid, e);
-                    return Mono.empty();
+                    log.error("Error queueing PDF document for {}", jid, e);
+                    return sendTextMessage(jid, "Maaf, dokumen gagal dikirim. Silakan coba lagi.");
                 });
     }
 
-    private MockMultipartFile createPdfFile(byte[] pdfBytes, String identifier, String documentType) {
+    private String buildPdfFilename(String identifier, String documentType) {
         String timestamp = LocalDateTime.now(JAKARTA_ZONE).format(TIMESTAMP_FORMATTER);
-        String filename = String.format("%s_%s_%s.pdf", documentType.toUpperCase(), identifier, timestamp);
-
-        return new MockMultipartFile(
-                "file",
-                filename,
-                "application/pdf",
-                pdfBytes
-        );
-    }
-
-    private WhatsAppRequestDTO buildPdfRequest(String jid, MockMultipartFile pdfFile, String accountOfficer, String documentType) {
-        String caption = buildPdfCaption(accountOfficer, documentType);
-
-        return WhatsAppRequestDTO.builder()
-                .phone(jid)
-                .caption(caption)
-                .isForwarded(false)
-                .multipartFile(pdfFile)
-                .type(WhatsAppMessageType.DOCUMENT)
-                .build();
+        return String.format("%s_%s_%s.pdf", documentType.toUpperCase(), identifier, timestamp);
     }
 
     private String buildPdfCaption(String accountOfficer, String documentType) {
@@ -91,14 +99,6 @@ public abstract class BaseReportHandler {
                 LocalDateTime.now(JAKARTA_ZONE).format(DATETIME_FORMATTER));
     }
 
-    private void logPdfSendResult(String jid, String code, String message) {
-        if ("200".equals(code)) {
-            log.info("PDF sent successfully to {}", jid);
-        } else {
-            log.warn("PDF send failed to {}: {} - {}", jid, code, message);
-        }
-    }
-
     protected String formatDate(LocalDateTime dateTime) {
         return dateTime.format(DATE_FORMATTER);
     }
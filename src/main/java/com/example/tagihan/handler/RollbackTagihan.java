@@ -0,0 +1,42 @@
+package com.example.tagihan.handler;
+
+import com.example.tagihan.dispatcher.Handler;
+import com.example.tagihan.dispatcher.MessageHandler;
+import com.example.tagihan.dto.WebhookPayload;
+import com.example.tagihan.dto.WhatsAppRequestDTO;
+import com.example.tagihan.service.BillsService;
+import com.example.tagihan.service.WhatsappService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+@Slf4j
+@Handler(trigger = "rollback_tagihan")
+@Component
+public class RollbackTagihan implements MessageHandler {
+    private final BillsService billsService;
+    private final WhatsappService whatsappService;
+
+    public RollbackTagihan(BillsService billsService, WhatsappService whatsappService) {
+        this.billsService = billsService;
+        this.whatsappService = whatsappService;
+    }
+
+    @Override
+    public Mono<Void> handle(WebhookPayload message) {
+        log.info("Rollback tagihan requested by {}", message.getPayload().getFrom());
+
+        return billsService.rollbackBills()
+                .map(restored -> "✅ Data tagihan dikembalikan ke versi sebelumnya (" + restored + " data)")
+                .onErrorResume(error -> {
+                    log.error("Error rolling back tagihan: ", error);
+                    return Mono.just("❌ Gagal mengembalikan data tagihan. " + error.getMessage());
+                })
+                .flatMap(text -> whatsappService.sendMessageText(WhatsAppRequestDTO.builder()
+                        .phone(message.getPayload().getChatId())
+                        .replyToMessageId(message.getPayload().getId())
+                        .message(text)
+                        .build()))
+                .then();
+    }
+}
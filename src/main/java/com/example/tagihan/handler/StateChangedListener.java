@@ -5,11 +5,12 @@ import com.example.tagihan.dto.WhatsAppMessageType;
 import com.example.tagihan.dto.WhatsAppRequestDTO;
 import com.example.tagihan.entity.VisitType;
 import com.example.tagihan.event.StateChangedEvent;
+import com.example.tagihan.event.StateEventBus;
 import com.example.tagihan.service.State;
 import com.example.tagihan.service.StateData;
 import com.example.tagihan.service.WhatsappService;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
@@ -19,26 +20,32 @@ public class StateChangedListener {
 
     private final WhatsappService whatsappService;
     private final WhatsAppMessageDispatcher whatsAppMessageDispatcher;
+    private final StateEventBus stateEventBus;
 
-    public StateChangedListener(WhatsappService whatsappService, WhatsAppMessageDispatcher whatsAppMessageDispatcher) {
+    public StateChangedListener(WhatsappService whatsappService, WhatsAppMessageDispatcher whatsAppMessageDispatcher,
+                                StateEventBus stateEventBus) {
         this.whatsappService = whatsappService;
         this.whatsAppMessageDispatcher = whatsAppMessageDispatcher;
+        this.stateEventBus = stateEventBus;
     }
 
-    @EventListener(StateChangedEvent.class)
-    public void onStateChanged(StateChangedEvent event) {
+    @PostConstruct
+    public void register() {
+        stateEventBus.subscribe(this::onStateChanged);
+    }
+
+    public Mono<Void> onStateChanged(StateChangedEvent event) {
         StateData stateData = event.getStateData();
 
         if (stateData == null || stateData.getCurrentState() == null) {
             log.warn("StateData or currentState is null, skipping notification");
-            return;
+            return Mono.empty();
         }
 
-        sendNotification(stateData)
+        return sendNotification(stateData)
                 .doOnError(e -> log.error("Failed to send notification for state: {}",
                         stateData.getCurrentState(), e))
-                .onErrorResume(e -> Mono.empty())
-                .subscribe();
+                .onErrorResume(e -> Mono.empty());
     }
 
     private Mono<Void> sendNotification(StateData stateData) {
@@ -0,0 +1,45 @@
+package com.example.tagihan.handler;
+
+import com.example.tagihan.dto.WhatsAppMessageType;
+import com.example.tagihan.dto.WhatsAppRequestDTO;
+import com.example.tagihan.event.StateExpiredEvent;
+import com.example.tagihan.service.WhatsappService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+@Slf4j
+@Component
+public class StateExpiredListener {
+
+    private final WhatsappService whatsappService;
+
+    public StateExpiredListener(WhatsappService whatsappService) {
+        this.whatsappService = whatsappService;
+    }
+
+    @EventListener(StateExpiredEvent.class)
+    public void onStateExpired(StateExpiredEvent event) {
+        String name = event.getStateData().getVisit() != null ? event.getStateData().getVisit().getName() : null;
+        String reason = event.isIdle()
+                ? "karena tidak ada balasan terlalu lama"
+                : "karena server sedang penuh";
+        String message = String.format("""
+                ⏱️ Input kunjungan %s dibatalkan %s.
+                
+                Silahkan kirim ulang perintahnya untuk memulai lagi.""", name != null ? name : "", reason);
+
+        WhatsAppRequestDTO dto = WhatsAppRequestDTO.builder()
+                .phone(event.getJid())
+                .type(WhatsAppMessageType.TEXT)
+                .message(message)
+                .build();
+
+        whatsappService.sendMessage(dto)
+                .doOnSuccess(v -> log.info("Expired state notification sent to {}", event.getJid()))
+                .doOnError(e -> log.error("Failed to notify {} about expired state", event.getJid(), e))
+                .onErrorResume(e -> Mono.empty())
+                .subscribe();
+    }
+}
@@ -2,61 +2,107 @@ package com.example.tagihan.handler;
 
 import com.example.tagihan.dispatcher.Handler;
 import com.example.tagihan.dispatcher.MessageHandler;
+import com.example.tagihan.dto.BillsSyncResult;
+import com.example.tagihan.dto.CsvIngestReport;
+import com.example.tagihan.dto.ResponseDTO;
 import com.example.tagihan.dto.WebhookPayload;
 import com.example.tagihan.dto.WhatsAppRequestDTO;
+import com.example.tagihan.service.BillsIngestMode;
 import com.example.tagihan.service.BillsService;
 import com.example.tagihan.service.WhatsappService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
 @Slf4j
-@Handler(trigger = "up_tagihan")
+@Handler(trigger = "up_tagihan", timeoutSeconds = 1200, retryable = false)
 @Component
 public class UpTagihan implements MessageHandler {
     private final BillsService billsService;
     private final WhatsappService whatsappService;
+    private final BillsIngestMode defaultMode;
 
-    public UpTagihan(BillsService billsService, WhatsappService whatsappService) {
+    public UpTagihan(BillsService billsService,
+                     WhatsappService whatsappService,
+                     @Value("${bills.ingest.mode:SWAP}") BillsIngestMode defaultMode) {
         this.billsService = billsService;
         this.whatsappService = whatsappService;
+        this.defaultMode = defaultMode;
     }
 
     @Override
     public Mono<Void> handle(WebhookPayload message) {
         log.info("Up tagihan: {}", message);
-        String[] messagePart = message.getPayload().getBody().split(" ");
+        String[] messagePart = message.getPayload().getBody().trim().split("\\s+");
 
-        if (messagePart.length == 2) {
-            return billsService.saveAndDeleteBillsReactive(messagePart[1])
-                    .doOnSubscribe(sub -> log.info("Up tagihan: {}", messagePart[1]))
+        if (messagePart.length == 2 || messagePart.length == 3) {
+            BillsIngestMode mode = messagePart.length == 3 ? parseMode(messagePart[2]) : defaultMode;
+            if (mode == null) {
+                return reply(message, "⚠️ Mode tidak dikenal: " + messagePart[2] + ". Pilihan: swap, replace, delta").then();
+            }
+
+            return billsService.syncBills(messagePart[1], mode)
+                    .doOnSubscribe(sub -> log.info("Up tagihan: {} (mode {})", messagePart[1], mode))
                     .flatMap(result -> {
                         log.info("Update tagihan berhasil untuk: {}", messagePart[1]);
-                        WhatsAppRequestDTO success = WhatsAppRequestDTO.builder()
-                                .phone(message.getPayload().getChatId())
-                                .replyToMessageId(message.getPayload().getId())
-                                .message("✅ Berhasil mengupdate data tagihan untuk: " + messagePart[1])
-                                .build();
-                        return whatsappService.sendMessageText(success);
+                        return reply(message, buildSuccessMessage(messagePart[1], result));
                     })
                     .onErrorResume(error -> {
                         log.error("Error updating tagihan: ", error);
-                        WhatsAppRequestDTO reply = WhatsAppRequestDTO.builder()
-                                .phone(message.getPayload().getChatId())
-                                .replyToMessageId(message.getPayload().getId())
-                                .message("❌ Gagal mengupdate data tagihan. Coba lagi nanti. " + error.getMessage())
-                                .build();
-                        return whatsappService.sendMessageText(reply);
+                        return reply(message, "❌ Gagal mengupdate data tagihan. Coba lagi nanti. " + error.getMessage());
                     })
                     .then();
         }
 
-        WhatsAppRequestDTO error = WhatsAppRequestDTO.builder()
+        return reply(message, "⚠️ Format pesan salah. Gunakan: up_tagihan [URL] [swap|replace|delta]").then();
+    }
+
+    private BillsIngestMode parseMode(String value) {
+        try {
+            return BillsIngestMode.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String buildSuccessMessage(String url, BillsSyncResult result) {
+        CsvIngestReport report = result.getReport();
+        StringBuilder message = new StringBuilder();
+        message.append("✅ Berhasil mengupdate data tagihan untuk: ").append(url).append("\n\n");
+        message.append("• Mode: ").append(result.getMode()).append("\n");
+        message.append("• Tersimpan: ").append(result.getSaved()).append("\n");
+        if (result.getMode() == BillsIngestMode.DELTA) {
+            message.append("• Baru: ").append(result.getAdded())
+                    .append(", berubah: ").append(result.getChanged())
+                    .append(", dihapus: ").append(result.getRemoved())
+                    .append(", tetap: ").append(result.getUnchanged()).append("\n");
+            if (result.getRemovalsSkipped() > 0) {
+                message.append("• Penghapusan dilewati: ").append(result.getRemovalsSkipped())
+                        .append(" SPK tidak ada di file, tapi ada baris yang ditolak atau gagal disimpan\n");
+            }
+        }
+        if (result.getFailed() > 0) {
+            message.append("• Gagal disimpan: ").append(result.getFailed()).append("\n");
+        }
+        message.append("• Waktu: ").append(result.getDuration().toSeconds()).append(" detik\n");
+
+        if (report != null && report.hasErrors()) {
+            message.append("\n⚠️ Baris ditolak: ").append(report.getRowsRejected())
+                    .append(", kolom angka tidak valid: ").append(report.getFieldErrors()).append("\n");
+            report.getSampledErrors().stream()
+                    .limit(5)
+                    .forEach(error -> message.append("- ").append(error).append("\n"));
+        }
+        return message.toString();
+    }
+
+    private Mono<ResponseDTO> reply(WebhookPayload message, String text) {
+        WhatsAppRequestDTO reply = WhatsAppRequestDTO.builder()
                 .phone(message.getPayload().getChatId())
                 .replyToMessageId(message.getPayload().getId())
-                .message("⚠️ Format pesan salah. Gunakan: up_tagihan [URL]")
+                .message(text)
                 .build();
-
-        return whatsappService.sendMessageText(error).then();
+        return whatsappService.sendMessageText(reply);
     }
-}
\ No newline at end of file
+}
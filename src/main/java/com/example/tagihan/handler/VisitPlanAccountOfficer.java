@@ -2,9 +2,12 @@ package com.example.tagihan.handler;
 
 import com.example.tagihan.dispatcher.Handler;
 import com.example.tagihan.dispatcher.MessageHandler;
+import com.example.tagihan.dto.ReportJobType;
 import com.example.tagihan.dto.WebhookPayload;
 import com.example.tagihan.entity.Visit;
+import com.example.tagihan.service.OutboxService;
 import com.example.tagihan.service.PdfService;
+import com.example.tagihan.service.ReportJobService;
 import com.example.tagihan.service.VisitService;
 import com.example.tagihan.service.WhatsappService;
 import lombok.extern.slf4j.Slf4j;
@@ -24,8 +27,10 @@ public class VisitPlanAccountOfficer extends BaseReportHandler implements Messag
 
     public VisitPlanAccountOfficer(VisitService visitService,
                                    PdfService pdfService,
-                                   WhatsappService whatsappService) {
-        super(whatsappService);
+                                   WhatsappService whatsappService,
+                                   OutboxService outboxService,
+                                   ReportJobService reportJobService) {
+        super(whatsappService, outboxService, reportJobService);
         this.visitService = visitService;
         this.pdfService = pdfService;
     }
@@ -38,34 +43,28 @@ public class VisitPlanAccountOfficer extends BaseReportHandler implements Messag
 
         log.info("Processing RKH request from {} for date: {}", jid, today);
 
+        String requestId = message.getPayload().getId();
+        return submitReportJob(ReportJobType.RKH, today.toString(), jid, chatId, requestId,
+                () -> processRkhRequest(jid, chatId, requestId, today));
+    }
+
+    private Mono<Void> processRkhRequest(String jid, String chatId, String requestId, LocalDate today) {
         return getFilteredVisits(today)
                 .collectList()
                 .flatMap(visits -> {
                     if (visits.isEmpty()) {
                         return handleNoVisitsFound(chatId, today);
                     }
-                    return generateAndSendPdf(jid, visits);
+                    return generateAndSendPdf(jid, requestId, visits);
                 })
                 .then()
                 .doOnSuccess(v -> log.info("RKH processed successfully for {}", jid))
                 .doOnError(error -> log.error("Error processing RKH for {}", jid, error))
-                .onErrorResume(error -> handleError(chatId, error))
-                .then();
+                .onErrorResume(error -> handleError(chatId, error).then(Mono.error(error)));
     }
 
     private Flux<Visit> getFilteredVisits(LocalDate targetDate) {
-        return visitService.findAll()
-                .filter(visit -> isVisitOnDate(visit, targetDate));
-    }
-
-    private boolean isVisitOnDate(Visit visit, LocalDate targetDate) {
-        if (visit.getVisitDate() == null) {
-            return false;
-        }
-        LocalDate visitDate = visit.getVisitDate()
-                .atZone(JAKARTA_ZONE)
-                .toLocalDate();
-        return visitDate.equals(targetDate);
+        return visitService.findByDate(targetDate);
     }
 
     private Mono<Void> handleNoVisitsFound(String chatId, LocalDate date) {
@@ -75,14 +74,14 @@ public class VisitPlanAccountOfficer extends BaseReportHandler implements Messag
         return sendTextMessage(chatId, message);
     }
 
-    private Mono<Void> generateAndSendPdf(String jid, java.util.List<Visit> visits) {
+    private Mono<Void> generateAndSendPdf(String jid, String requestId, java.util.List<Visit> visits) {
         log.info("Found {} visits for today", visits.size());
 
         String accountOfficer = "Cabang Kaligondang";
         String identifier = visits.getFirst().getSpk();
 
         return pdfService.generateLKNPdf(Flux.fromIterable(visits), accountOfficer, "rkh")
-                .flatMap(pdfBytes -> sendPdfDocument(jid, pdfBytes, accountOfficer, identifier, "rkh"));
+                .flatMap(pdfBytes -> sendPdfDocument(jid, requestId, pdfBytes, accountOfficer, identifier, "rkh"));
     }
 
     private Mono<Void> handleError(String chatId, Throwable error) {
@@ -2,26 +2,39 @@ package com.example.tagihan.handler;
 
 import com.example.tagihan.dispatcher.Handler;
 import com.example.tagihan.dispatcher.MessageHandler;
+import com.example.tagihan.dto.ReportJobType;
 import com.example.tagihan.dto.WebhookPayload;
 import com.example.tagihan.entity.User;
 import com.example.tagihan.entity.Visit;
-import com.example.tagihan.entity.VisitType;
+import com.example.tagihan.service.OutboxService;
 import com.example.tagihan.service.PdfService;
+import com.example.tagihan.service.ReportJobService;
 import com.example.tagihan.service.UserService;
 import com.example.tagihan.service.VisitService;
 import com.example.tagihan.service.WhatsappService;
+import com.example.tagihan.util.DateRangeUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
 @Slf4j
 @Component
 @Handler(trigger = "lkn")
 public class VisitPlanSPK extends BaseReportHandler implements MessageHandler {
 
     private static final String SPK_PATTERN = "^\\d{12}$";
+    private static final String MINE_KEYWORD = "saya";
+    private static final String USAGE = """
+            Format: .lkn <no spk> [tanggal awal] [tanggal akhir] [saya]
+            Tanggal dalam format yyyy-MM-dd. Satu tanggal = hari itu saja.
+            Tambahkan "saya" untuk hanya menampilkan kunjungan Anda.""";
 
     @Value("${message.prefix}")
     private String messagePrefix;
@@ -33,8 +46,10 @@ public class VisitPlanSPK extends BaseReportHandler implements MessageHandler {
     public VisitPlanSPK(VisitService visitService,
                         UserService userService,
                         PdfService pdfService,
-                        WhatsappService whatsappService) {
-        super(whatsappService);
+                        WhatsappService whatsappService,
+                        OutboxService outboxService,
+                        ReportJobService reportJobService) {
+        super(whatsappService, outboxService, reportJobService);
         this.visitService = visitService;
         this.userService = userService;
         this.pdfService = pdfService;
@@ -49,28 +64,76 @@ public class VisitPlanSPK extends BaseReportHandler implements MessageHandler {
         log.info("Processing LKN request from {} with body: {}", jid, body);
 
         if (body.isBlank()) {
-            return sendTextMessage(jid, "Silakan masukkan nomor SPK untuk mencetak LKN.");
+            return sendTextMessage(jid, "Silakan masukkan nomor SPK untuk mencetak LKN.\n\n" + USAGE);
+        }
+
+        LknRequest request = parseRequest(body);
+        if (request == null) {
+            return sendTextMessage(chatId, USAGE);
         }
 
-        return processLknRequest(jid, chatId, body);
+        String requestId = message.getPayload().getId();
+        String filters = String.join(" ", body.trim().split("\\s+"));
+        return submitReportJob(ReportJobType.LKN, filters, jid, chatId, requestId,
+                () -> processLknRequest(jid, chatId, requestId, request));
     }
 
     private String extractBody(String rawBody) {
         return rawBody.trim().replace(messagePrefix + "lkn", "").trim();
     }
 
-    private Mono<Void> processLknRequest(String jid, String chatId, String body) {
+    /**
+     * Parses {@code <spk> [from] [to] [saya]}; returns {@code null} when the input does not fit.
+     */
+    private LknRequest parseRequest(String body) {
+        String[] parts = body.trim().split("\\s+");
+        if (!parts[0].matches(SPK_PATTERN)) {
+            return null;
+        }
+
+        List<LocalDate> dates = new ArrayList<>();
+        boolean mine = false;
+        for (int i = 1; i < parts.length; i++) {
+            if (MINE_KEYWORD.equalsIgnoreCase(parts[i])) {
+                mine = true;
+                continue;
+            }
+            if (dates.size() == 2) {
+                return null;
+            }
+            try {
+                dates.add(DateRangeUtil.parseDate(parts[i]));
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+
+        DateRangeUtil.DateRange range = null;
+        try {
+            if (dates.size() == 1) {
+                range = DateRangeUtil.createDayRange(dates.getFirst());
+            } else if (dates.size() == 2) {
+                range = DateRangeUtil.createDateRange(dates.get(0), dates.get(1));
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return new LknRequest(parts[0], range, mine);
+    }
+
+    private Mono<Void> processLknRequest(String jid, String chatId, String requestId, LknRequest request) {
         return userService.findByJid(jid)
                 .switchIfEmpty(handleUserNotFound(chatId))
                 .flatMap(user -> {
-                    log.info("Processing LKN for user: {}, AO: {}", user.getUserId(), user.getAccountOfficer());
-                    return processVisits(chatId, body, user.getAccountOfficer());
+                    log.info("Processing LKN for user: {}, AO: {}, request: {}",
+                            user.getUserId(), user.getAccountOfficer(), request);
+                    String userId = request.mine() ? user.getUserId() : null;
+                    return processVisits(chatId, requestId, request, userId, user.getAccountOfficer());
                 })
                 .then()
                 .doOnSuccess(v -> log.info("LKN processed successfully for {}", jid))
                 .doOnError(error -> log.error("Error processing LKN for {}", jid, error))
-                .onErrorResume(error -> handleError(chatId, error))
-                .then();
+                .onErrorResume(error -> handleError(chatId, error).then(Mono.error(error)));
     }
 
     private Mono<? extends User> handleUserNotFound(String chatId) {
@@ -79,51 +142,36 @@ public class VisitPlanSPK extends BaseReportHandler implements MessageHandler {
                 .then(Mono.empty());
     }
 
-    private Mono<Void> processVisits(String chatId, String body, String accountOfficer) {
-        return buildFilteredVisits(body)
-                .filter(visit -> !visit.getVisitType().equals(VisitType.INFORMATIONAL))
+    private Mono<Void> processVisits(String chatId, String requestId, LknRequest request, String userId, String accountOfficer) {
+        return visitService.findForLkn(request.spk(), request.range(), userId)
                 .collectList()
                 .flatMap(visits -> {
                     if (visits.isEmpty()) {
                         return handleNoVisitsFound(chatId);
                     }
-                    return generateAndSendPdf(chatId, visits, accountOfficer);
+                    return generateAndSendPdf(chatId, requestId, visits, accountOfficer);
                 });
     }
 
-    private Flux<Visit> buildFilteredVisits(String body) {
-        Flux<Visit> allVisits = visitService.findAll();
-
-        if (body == null || body.isBlank()) {
-            log.info("No filter criteria provided");
-            return allVisits;
-        }
-
-        String trimmedBody = body.trim();
-        if (trimmedBody.matches(SPK_PATTERN)) {
-            log.info("Filtering by SPK: {}", trimmedBody);
-            return allVisits.filter(visit -> trimmedBody.equals(visit.getSpk()));
-        }
-
-        return allVisits;
-    }
-
     private Mono<Void> handleNoVisitsFound(String chatId) {
         log.warn("No visits found for the given criteria");
         return sendTextMessage(chatId, "Tidak ada data kunjungan yang ditemukan untuk kriteria tersebut.");
     }
 
-    private Mono<Void> generateAndSendPdf(String chatId, java.util.List<Visit> visits, String accountOfficer) {
+    private Mono<Void> generateAndSendPdf(String chatId, String requestId, java.util.List<Visit> visits, String accountOfficer) {
         log.info("Found {} visits matching criteria", visits.size());
 
         String identifier = visits.getFirst().getName();
 
         return pdfService.generateLKNPdf(Flux.fromIterable(visits), accountOfficer, "lkn")
-                .flatMap(pdfBytes -> sendPdfDocument(chatId, pdfBytes, accountOfficer, identifier, "lkn"));
+                .flatMap(pdfBytes -> sendPdfDocument(chatId, requestId, pdfBytes, accountOfficer, identifier, "lkn"));
     }
 
     private Mono<Void> handleError(String chatId, Throwable error) {
         log.error("Failed to generate LKN", error);
         return sendTextMessage(chatId, "Maaf, terjadi kesalahan: " + error.getMessage());
     }
-}
\ No newline at end of file
+
+    private record LknRequest(String spk, DateRangeUtil.DateRange range, boolean mine) {
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.tagihan.handler;
+
+import com.example.tagihan.dispatcher.Handler;
+import com.example.tagihan.dispatcher.MessageHandler;
+import com.example.tagihan.dto.VisitStatsRow;
+import com.example.tagihan.dto.VisitStatsTotal;
+import com.example.tagihan.dto.WebhookPayload;
+import com.example.tagihan.dto.WhatsAppRequestDTO;
+import com.example.tagihan.service.VisitStatsService;
+import com.example.tagihan.service.WhatsappService;
+import com.example.tagihan.util.CurrencyUtil;
+import com.example.tagihan.util.DateRangeUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Slf4j
+@Handler(trigger = "rekap")
+@Component
+public class VisitStatsHandler implements MessageHandler {
+
+    private static final ZoneId JAKARTA_ZONE = ZoneId.of("Asia/Jakarta");
+    private static final String USAGE = """
+            Format: .rekap [tanggal awal] [tanggal akhir]
+            Tanggal dalam format yyyy-MM-dd. Tanpa tanggal = hari ini, satu tanggal = hari itu saja.""";
+
+    private final VisitStatsService visitStatsService;
+    private final WhatsappService whatsappService;
+
+    public VisitStatsHandler(VisitStatsService visitStatsService, WhatsappService whatsappService) {
+        this.visitStatsService = visitStatsService;
+        this.whatsappService = whatsappService;
+    }
+
+    @Override
+    public Mono<Void> handle(WebhookPayload message) {
+        String[] parts = message.getPayload().getBody().trim().split("\\s+");
+        LocalDate today = LocalDate.now(JAKARTA_ZONE);
+
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = parts.length > 1 ? DateRangeUtil.parseDate(parts[1]) : today;
+            to = parts.length > 2 ? DateRangeUtil.parseDate(parts[2]) : from;
+        } catch (DateTimeParseException e) {
+            return reply(message, USAGE);
+        }
+        if (parts.length > 3 || to.isBefore(from)) {
+            return reply(message, USAGE);
+        }
+        if (!visitStatsService.isAllowedRange(from, to)) {
+            return reply(message, "❌ Rentang rekap maksimal " + visitStatsService.getMaxDays() + " hari.");
+        }
+
+        log.info("Rekap kunjungan {} s/d {} diminta oleh {}", from, to, message.getPayload().getFrom());
+        return Mono.zip(visitStatsService.rollup(from, to, null).collectList(),
+                        visitStatsService.totals(from, to, null).collectList(),
+                        visitStatsService.overall(from, to)
+                                .defaultIfEmpty(new VisitStatsTotal(null, null, 0, 0, 0, null)))
+                .map(result -> buildSummary(from, to, result.getT1(), result.getT2(), result.getT3()))
+                .onErrorResume(error -> {
+                    log.error("Error building rekap: ", error);
+                    return Mono.just("❌ Gagal membuat rekap kunjungan. " + error.getMessage());
+                })
+                .flatMap(text -> reply(message, text));
+    }
+
+    /**
+     * Visit counts are summed from the per-day rows; SPKs and their dues come from the range
+     * totals, since an SPK visited on several days appears in several rows.
+     */
+    private String buildSummary(LocalDate from, LocalDate to, List<VisitStatsRow> rows,
+                                List<VisitStatsTotal> totals, VisitStatsTotal overallTotal) {
+        String period = from.equals(to) ? from.toString() : from + " s/d " + to;
+        if (rows.isEmpty()) {
+            return "📊 Rekap Kunjungan " + period + "\n\nBelum ada kunjungan.";
+        }
+
+        Map<String, Totals> perAo = new LinkedHashMap<>();
+        Totals overall = new Totals("Total");
+        for (VisitStatsRow row : rows) {
+            String name = row.accountOfficer() != null ? row.accountOfficer() : String.valueOf(row.userId());
+            perAo.computeIfAbsent(String.valueOf(row.userId()), id -> new Totals(name)).add(row);
+            overall.add(row);
+        }
+
+        StringBuilder text = new StringBuilder("📊 Rekap Kunjungan ").append(period).append("\n");
+        totals.forEach(total -> {
+            Totals ao = perAo.get(String.valueOf(total.userId()));
+            if (ao != null) {
+                ao.total = total;
+            }
+        });
+        overall.total = overallTotal;
+
+        perAo.values().forEach(ao -> ao.appendTo(text));
+        if (perAo.size() > 1) {
+            overall.appendTo(text);
+        }
+        return text.toString().trim();
+    }
+
+    private Mono<Void> reply(WebhookPayload message, String text) {
+        return whatsappService.sendMessageText(WhatsAppRequestDTO.builder()
+                        .phone(message.getPayload().getChatId())
+                        .replyToMessageId(message.getPayload().getId())
+                        .message(text)
+                        .build())
+                .then();
+    }
+
+    private static final class Totals {
+
+        private final String name;
+        private final Map<String, Long> visitsByType = new TreeMap<>();
+        private long visits;
+        private long appointments;
+        private VisitStatsTotal total;
+
+        private Totals(String name) {
+            this.name = name;
+        }
+
+        private void add(VisitStatsRow row) {
+            visitsByType.merge(String.valueOf(row.visitType()), row.visits(), Long::sum);
+            visits += row.visits();
+            appointments += row.appointments();
+        }
+
+        private void appendTo(StringBuilder text) {
+            text.append("\n*").append(name).append("*\n");
+            text.append("• Kunjungan: ").append(visits).append(" (");
+            visitsByType.forEach((type, count) -> text.append(type.toLowerCase(Locale.ROOT)).append(' ').append(count).append(", "));
+            text.setLength(text.length() - 2);
+            text.append(")\n");
+            long spkCount = total != null ? total.spkCount() : 0;
+            long appointmentTotal = total != null ? total.appointmentTotal() : 0;
+            long dueTotal = total != null ? total.dueTotal() : 0;
+            text.append("• SPK dikunjungi: ").append(spkCount).append("\n");
+            text.append("• Janji bayar: ").append(appointments).append("x, ")
+                    .append(CurrencyUtil.formatRupiah(appointmentTotal)).append("\n");
+            if (dueTotal > 0) {
+                text.append("• Janji / kewajiban: ")
+                        .append(String.format(Locale.ROOT, "%.1f%%", appointmentTotal * 100.0 / dueTotal))
+                        .append(" dari ").append(CurrencyUtil.formatRupiah(dueTotal)).append("\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.tagihan.repository;
+
+import com.example.tagihan.entity.InboundMessage;
+import com.example.tagihan.entity.InboundStatus;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface InboundMessageRepository extends ReactiveMongoRepository<InboundMessage, String> {
+
+    Mono<Long> countByStatus(InboundStatus status);
+}
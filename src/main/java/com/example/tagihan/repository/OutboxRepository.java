@@ -0,0 +1,22 @@
+package com.example.tagihan.repository;
+
+import com.example.tagihan.dto.OutboxView;
+import com.example.tagihan.entity.OutboxMessage;
+import com.example.tagihan.entity.OutboxStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface OutboxRepository extends ReactiveMongoRepository<OutboxMessage, String> {
+
+    Mono<Long> countByStatus(OutboxStatus status);
+
+    Mono<OutboxMessage> findByIdempotencyKey(String idempotencyKey);
+
+    Mono<OutboxView> findViewByIdempotencyKey(String idempotencyKey);
+
+    Flux<OutboxView> findByStatusOrderByCreatedAtDesc(OutboxStatus status, Pageable pageable);
+}
@@ -1,13 +1,16 @@
 package com.example.tagihan.repository;
 
+import com.example.tagihan.dto.ReminderVisit;
 import com.example.tagihan.entity.Visit;
 import com.example.tagihan.entity.VisitType;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
@@ -21,4 +24,12 @@ public interface VisitRepository extends ReactiveMongoRepository<Visit, String>
     Mono<List<Visit>> findByUserIdAndVisitDateBetween(String userId, Instant visitDateAfter, Instant visitDateBefore);
 
     Mono<List<Visit>> findByUserIdAndVisitTypeAndVisitDateBetween(String userId, VisitType visitType, Instant visitDateAfter, Instant visitDateBefore);
+
+    /**
+     * Visits of all users within {@code [start, end]}, both bounds inclusive.
+     */
+    @Query(value = "{ 'visitDate': { $gte: ?0, $lte: ?1 } }", sort = "{ 'visitDate': 1 }")
+    Flux<Visit> findByVisitDateInRange(Instant start, Instant end);
+
+    Flux<ReminderVisit> findByReminderDate(LocalDate reminderDate);
 }
@@ -0,0 +1,189 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.dto.BillsWriteStats;
+import com.example.tagihan.entity.Bills;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes bills as unordered bulk upserts keyed on {@code noSpk}.
+ * The batch size adapts to how the server copes: it grows while batches finish well within
+ * the target time and halves on timeouts, splitting the batch that timed out. Documents the
+ * server rejects are counted as failed; the rest of the batch is still applied, so a bad
+ * document never degrades the run into single-document writes.
+ */
+@Slf4j
+@Component
+public class BillsBulkWriter {
+
+    private static final Duration WRITE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final int initialBatchSize;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetBatchMillis;
+    private final int maxRetries;
+
+    public BillsBulkWriter(ReactiveMongoTemplate mongoTemplate,
+                           @Value("${bills.bulk.initial-batch-size:500}") int initialBatchSize,
+                           @Value("${bills.bulk.min-batch-size:50}") int minBatchSize,
+                           @Value("${bills.bulk.max-batch-size:2000}") int maxBatchSize,
+                           @Value("${bills.bulk.target-batch-millis:1000}") long targetBatchMillis,
+                           @Value("${bills.bulk.max-retries:3}") int maxRetries) {
+        this.mongoTemplate = mongoTemplate;
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.initialBatchSize = Math.clamp(initialBatchSize, this.minBatchSize, this.maxBatchSize);
+        this.targetBatchMillis = targetBatchMillis;
+        this.maxRetries = maxRetries;
+    }
+
+    public Mono<BillsWriteStats> upsert(Flux<Bills> bills, String collectionName) {
+        return Mono.defer(() -> {
+                    BatchState state = new BatchState();
+
+                    return bills
+                            .doOnNext(bill -> state.spks.add(bill.getNoSpk()))
+                            .bufferUntil(bill -> state.fill())
+                            .concatMap(batch -> writeBatch(batch, collectionName, state, 0))
+                            .then(Mono.fromCallable(() -> {
+                                state.stats.setDistinctSpks(state.spks.size());
+                                return state.stats;
+                            }));
+                })
+                .doOnSuccess(stats -> log.info("Bulk upsert ke {} selesai: {} baru, {} diperbarui, {} gagal, {} batch (ukuran akhir {})",
+                        collectionName, stats.getInserted(), stats.getUpdated(), stats.getFailed(),
+                        stats.getBatches(), stats.getFinalBatchSize()));
+    }
+
+    private Mono<Void> writeBatch(List<Bills> batch, String collectionName, BatchState state, int attempt) {
+        return Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return execute(batch, collectionName)
+                            .timeout(WRITE_TIMEOUT)
+                            .doOnNext(result -> {
+                                state.record(result, 0);
+                                state.onSuccess(Duration.ofNanos(System.nanoTime() - start).toMillis());
+                            })
+                            .then();
+                })
+                .onErrorResume(error -> bulkWriteFailure(error) != null, error -> {
+                    MongoBulkWriteException bulkError = bulkWriteFailure(error);
+                    int failed = bulkError.getWriteErrors().size();
+                    state.record(bulkError.getWriteResult(), failed);
+                    if (failed > 0) {
+                        log.warn("Bulk upsert ke {}: {} dari {} dokumen ditolak, contoh: {}",
+                                collectionName, failed, batch.size(), bulkError.getWriteErrors().getFirst().getMessage());
+                    }
+                    if (bulkError.getWriteConcernError() != null) {
+                        log.warn("Bulk upsert ke {}: write concern error: {}",
+                                collectionName, bulkError.getWriteConcernError().getMessage());
+                    }
+                    return Mono.empty();
+                })
+                .onErrorResume(this::isTransient, error -> {
+                    if (attempt >= maxRetries) {
+                        return Mono.error(error);
+                    }
+                    state.onTransientError();
+                    log.warn("Bulk upsert ke {} timeout ({} dokumen), attempt {}, ukuran batch menjadi {}",
+                            collectionName, batch.size(), attempt + 1, state.batchSize);
+
+                    Duration backoff = Duration.ofSeconds(1L << attempt);
+                    if (batch.size() <= state.batchSize) {
+                        return Mono.delay(backoff)
+                                .then(writeBatch(batch, collectionName, state, attempt + 1));
+                    }
+                    return Mono.delay(backoff)
+                            .thenMany(Flux.fromIterable(batch).buffer(state.batchSize))
+                            .concatMap(part -> writeBatch(part, collectionName, state, attempt + 1))
+                            .then();
+                });
+    }
+
+    private Mono<BulkWriteResult> execute(List<Bills> batch, String collectionName) {
+        ReactiveBulkOperations operations = mongoTemplate.bulkOps(
+                BulkOperations.BulkMode.UNORDERED, Bills.class, collectionName);
+        batch.forEach(bill -> operations.replaceOne(
+                Query.query(Criteria.where("noSpk").is(bill.getNoSpk())),
+                bill,
+                FindAndReplaceOptions.options().upsert()));
+        return operations.execute();
+    }
+
+    /**
+     * The template translates driver exceptions (a rejected document becomes a
+     * {@code DuplicateKeyException} or {@code DataIntegrityViolationException}), so the bulk
+     * result is on the cause.
+     */
+    private static MongoBulkWriteException bulkWriteFailure(Throwable throwable) {
+        if (throwable instanceof MongoBulkWriteException bulkError) {
+            return bulkError;
+        }
+        return throwable.getCause() instanceof MongoBulkWriteException bulkError ? bulkError : null;
+    }
+
+    private boolean isTransient(Throwable throwable) {
+        return throwable instanceof MongoTimeoutException ||
+                throwable instanceof TimeoutException;
+    }
+
+    /**
+     * Per-run state. Batches are written one at a time; {@link #batchSize} is also read by the
+     * upstream buffering, hence volatile.
+     */
+    private final class BatchState {
+
+        private final BillsWriteStats stats = new BillsWriteStats();
+        private final Set<String> spks = new HashSet<>();
+        private volatile int batchSize = initialBatchSize;
+        private int filled;
+
+        private boolean fill() {
+            if (++filled >= batchSize) {
+                filled = 0;
+                return true;
+            }
+            return false;
+        }
+
+        private void record(BulkWriteResult result, int failed) {
+            stats.setInserted(stats.getInserted() + result.getUpserts().size() + result.getInsertedCount());
+            stats.setUpdated(stats.getUpdated() + result.getMatchedCount());
+            stats.setFailed(stats.getFailed() + failed);
+            stats.setBatches(stats.getBatches() + 1);
+            stats.setFinalBatchSize(batchSize);
+        }
+
+        private void onSuccess(long elapsedMillis) {
+            if (elapsedMillis < targetBatchMillis / 2 && batchSize < maxBatchSize) {
+                batchSize = Math.min(maxBatchSize, batchSize * 2);
+            } else if (elapsedMillis > targetBatchMillis && batchSize > minBatchSize) {
+                batchSize = Math.max(minBatchSize, batchSize / 2);
+            }
+        }
+
+        private void onTransientError() {
+            batchSize = Math.max(minBatchSize, batchSize / 2);
+        }
+    }
+}
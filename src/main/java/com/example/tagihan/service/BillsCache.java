@@ -0,0 +1,82 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.entity.Bills;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * In-process cache of {@link Bills} keyed by {@code noSpk}.
+ * Bounded by an estimate of the retained heap rather than by entry count, evicted with
+ * Caffeine's W-TinyLFU policy and expired after a fixed time so a missed invalidation cannot
+ * serve stale amounts forever. Concurrent lookups of the same SPK share one database read.
+ * Unknown SPKs are not cached. A cancelled caller does not cancel the shared load.
+ */
+@Slf4j
+@Component
+public class BillsCache {
+
+    private static final int BASE_ENTRY_BYTES = 320;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private final AsyncCache<String, Bills> cache;
+
+    public BillsCache(MeterRegistry meterRegistry,
+                      @Value("${bills.cache.max-bytes:33554432}") long maxBytes,
+                      @Value("${bills.cache.ttl-minutes:30}") long ttlMinutes) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String spk, Bills bill) -> estimateBytes(spk, bill))
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "bills");
+        log.info("Bills cache aktif: maks {} byte, TTL {} menit", maxBytes, ttlMinutes);
+    }
+
+    public Mono<Bills> get(String spk, Function<String, Mono<Bills>> loader) {
+        return Mono.fromFuture(() -> cache.get(spk, (key, executor) -> loader.apply(key).toFuture()), true);
+    }
+
+    public void invalidate(Collection<String> spks) {
+        if (!spks.isEmpty()) {
+            cache.synchronous().invalidateAll(spks);
+            log.info("{} entri bills cache di-invalidate", spks.size());
+        }
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+        log.info("Bills cache dikosongkan");
+    }
+
+    public CacheStats getStats() {
+        return cache.synchronous().stats();
+    }
+
+    private static int estimateBytes(String spk, Bills bill) {
+        int bytes = BASE_ENTRY_BYTES + stringBytes(spk);
+        for (String value : new String[]{
+                bill.getId(), bill.getCustomerId(), bill.getWilayah(), bill.getBranch(), bill.getNoSpk(),
+                bill.getOfficeLocation(), bill.getProduct(), bill.getName(), bill.getAddress(),
+                bill.getPayDown(), bill.getRealization(), bill.getDueDate(), bill.getCollectStatus(),
+                bill.getDayLate(), bill.getAccountOfficer(), bill.getKios()}) {
+            bytes += stringBytes(value);
+        }
+        return bytes;
+    }
+
+    private static int stringBytes(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + value.length();
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.entity.Bills;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.RenameCollectionOptions;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blue/green handling of the bills collection.
+ * A reload is written to {@link #STAGING_COLLECTION}, indexed there, and then renamed over
+ * {@link #LIVE_COLLECTION} in a single server-side operation, so readers never see an empty
+ * or half-filled collection. The generation being replaced is kept as
+ * {@link #PREVIOUS_COLLECTION} for {@link #rollback()}; REPLACE and DELTA runs, which write
+ * the live collection in place, take the same snapshot first so a rollback always undoes the
+ * latest run.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BillsCollectionManager {
+
+    public static final String LIVE_COLLECTION = "bills";
+    public static final String STAGING_COLLECTION = "bills_staging";
+    public static final String PREVIOUS_COLLECTION = "bills_previous";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    /**
+     * Drops whatever a previous run left in staging and recreates its indexes, so the unique
+     * {@code noSpk} index is in place before the first batch is written.
+     */
+    public Mono<Void> resetStaging() {
+        return dropStaging()
+                .then(Mono.defer(() -> ensureIndexes(STAGING_COLLECTION)));
+    }
+
+    public Mono<Void> dropStaging() {
+        return mongoTemplate.dropCollection(STAGING_COLLECTION)
+                .doOnSuccess(v -> log.info("Koleksi {} dikosongkan", STAGING_COLLECTION));
+    }
+
+    public Mono<Long> count(String collectionName) {
+        return mongoTemplate.getCollection(collectionName)
+                .flatMap(collection -> Mono.from(collection.countDocuments()));
+    }
+
+    /**
+     * Creates the indexes declared on {@link Bills} (unique {@code noSpk}, {@code accountOfficer},
+     * {@code collectStatus}) on the given collection. Index creation is idempotent, so this is
+     * safe to run on every start and on every freshly created staging collection.
+     */
+    public Mono<Void> ensureIndexes(String collectionName) {
+        IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+
+        return Flux.<IndexDefinition>fromIterable(resolver.resolveIndexFor(Bills.class))
+                .concatMap(definition -> mongoTemplate.indexOps(collectionName).createIndex(definition))
+                .doOnNext(name -> log.info("Index {} siap di {}", name, collectionName))
+                .then();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureLiveIndexes() {
+        ensureIndexes(LIVE_COLLECTION)
+                .subscribe(
+                        v -> { },
+                        error -> log.error("Gagal membuat index di {}, cek duplikat noSpk lalu upload ulang: {}",
+                                LIVE_COLLECTION, error.getMessage())
+                );
+    }
+
+    /**
+     * Current {@code noSpk -> contentHash} pairs of the live collection. Documents written before
+     * row hashes existed map to {@code null}, so they are rewritten once by the next delta sync.
+     */
+    public Mono<Map<String, Long>> loadContentHashes() {
+        Query query = new Query();
+        query.fields().include("noSpk").include("contentHash").exclude("_id");
+
+        return mongoTemplate.find(query, Document.class, LIVE_COLLECTION)
+                .filter(document -> document.getString("noSpk") != null)
+                .<Map<String, Long>>collect(HashMap::new,
+                        (hashes, document) -> hashes.put(document.getString("noSpk"), document.getLong("contentHash")))
+                .doOnSuccess(hashes -> log.info("{} hash tagihan dimuat dari {}", hashes.size(), LIVE_COLLECTION));
+    }
+
+    public Mono<Long> removeBySpk(List<String> spks) {
+        if (spks.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return mongoTemplate.remove(Query.query(Criteria.where("noSpk").in(spks)), LIVE_COLLECTION)
+                .map(result -> result.getDeletedCount());
+    }
+
+    /**
+     * Copies the live generation to {@link #PREVIOUS_COLLECTION} and then atomically
+     * replaces the live collection with the staging one.
+     */
+    public Mono<Void> promoteStaging() {
+        return snapshotLive()
+                .then(rename(STAGING_COLLECTION, LIVE_COLLECTION))
+                .doOnSuccess(v -> log.info("Koleksi {} dipromosikan menjadi {}", STAGING_COLLECTION, LIVE_COLLECTION));
+    }
+
+    /**
+     * Puts the previous generation back in place of the live collection.
+     */
+    public Mono<Long> rollback() {
+        return mongoTemplate.collectionExists(PREVIOUS_COLLECTION)
+                .flatMap(exists -> {
+                    if (!exists) {
+                        return Mono.error(new IllegalStateException("Tidak ada generasi sebelumnya untuk dikembalikan"));
+                    }
+                    return count(PREVIOUS_COLLECTION);
+                })
+                .flatMap(previousCount -> rename(PREVIOUS_COLLECTION, LIVE_COLLECTION)
+                        .thenReturn(previousCount))
+                .doOnSuccess(restored -> log.info("Rollback selesai, {} data tagihan dikembalikan", restored));
+    }
+
+    /**
+     * Copies the live generation to {@link #PREVIOUS_COLLECTION}, replacing the older snapshot.
+     */
+    public Mono<Void> snapshotLive() {
+        return mongoTemplate.collectionExists(LIVE_COLLECTION)
+                .flatMap(exists -> {
+                    if (!exists) {
+                        return mongoTemplate.dropCollection(PREVIOUS_COLLECTION);
+                    }
+                    return mongoTemplate.aggregate(
+                                    Aggregation.newAggregation(Aggregation.out(PREVIOUS_COLLECTION)),
+                                    LIVE_COLLECTION,
+                                    Document.class)
+                            .then(Mono.defer(() -> ensureIndexes(PREVIOUS_COLLECTION)));
+                });
+    }
+
+    private Mono<Void> rename(String source, String target) {
+        return mongoTemplate.getCollection(source)
+                .flatMap(collection -> Mono.from(collection.renameCollection(
+                        new MongoNamespace(collection.getNamespace().getDatabaseName(), target),
+                        new RenameCollectionOptions().dropTarget(true))))
+                .then();
+    }
+}
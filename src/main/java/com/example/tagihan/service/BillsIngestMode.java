@@ -0,0 +1,17 @@
+package com.example.tagihan.service;
+
+public enum BillsIngestMode {
+
+	/**
+	 * Delete the live collection, then insert the new rows in place.
+	 */
+	REPLACE,
+	/**
+	 * Load into a staging collection and swap it in once validated.
+	 */
+	SWAP,
+	/**
+	 * Compare row hashes with the live collection and only write what changed.
+	 */
+	DELTA
+}
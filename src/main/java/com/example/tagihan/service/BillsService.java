@@ -1,5 +1,8 @@
 package com.example.tagihan.service;
 
+import com.example.tagihan.dto.BillsSyncResult;
+import com.example.tagihan.dto.BillsWriteStats;
+import com.example.tagihan.dto.CsvIngestReport;
 import com.example.tagihan.entity.Bills;
 import com.example.tagihan.repository.BillsRepo;
 import com.mongodb.MongoTimeoutException;
@@ -12,7 +15,11 @@ import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 @Slf4j
@@ -20,21 +27,169 @@ import java.util.concurrent.atomic.AtomicLong;
 @RequiredArgsConstructor
 public class BillsService {
 
+    private static final int DELETE_BATCH_SIZE = 1000;
+
     private final BillsRepo billsRepo;
     private final DownloadService downloadService;
+    private final BillsCollectionManager collectionManager;
+    private final BillsBulkWriter bulkWriter;
+    private final BillsCache billsCache;
+
+    public Mono<BillsSyncResult> syncBills(String url, BillsIngestMode mode) {
+        long start = System.currentTimeMillis();
+        CsvIngestReport report = new CsvIngestReport();
+
+        Mono<BillsSyncResult> sync = switch (mode) {
+            case REPLACE -> collectionManager.snapshotLive()
+                    .then(Mono.defer(() -> replaceBillsReactive(url, report)))
+                    .map(stats -> BillsSyncResult.builder()
+                            .saved(stats.getWritten())
+                            .failed(stats.getFailed())
+                            .build());
+            case SWAP -> swapBillsReactive(url, report);
+            case DELTA -> collectionManager.snapshotLive()
+                    .then(Mono.defer(() -> deltaSyncBills(url, report)));
+        };
+
+        return sync
+                .map(result -> {
+                    result.setMode(mode);
+                    result.setReport(report);
+                    result.setDuration(Duration.ofMillis(System.currentTimeMillis() - start));
+                    return result;
+                })
+                .doOnSuccess(result -> log.info("Sinkronisasi {} selesai dalam {} ms: {}",
+                        mode, result.getDuration().toMillis(), report))
+                .doFinally(signal -> {
+                    if (mode != BillsIngestMode.DELTA) {
+                        billsCache.invalidateAll();
+                    }
+                });
+    }
+
+    /**
+     * Loads the CSV into the staging collection and only swaps it in when every accepted row
+     * made it there. The live collection keeps serving lookups for the whole load.
+     */
+    public Mono<BillsSyncResult> swapBillsReactive(String url, CsvIngestReport report) {
+        return collectionManager.resetStaging()
+                .then(Mono.defer(() -> bulkWriter.upsert(
+                        downloadService.downloadAndParseCsv(url, report), BillsCollectionManager.STAGING_COLLECTION)))
+                .timeout(Duration.ofMinutes(10))
+                .flatMap(stats -> collectionManager.count(BillsCollectionManager.STAGING_COLLECTION)
+                        .flatMap(staged -> validateStaging(staged, stats, report)))
+                .flatMap(staged -> collectionManager.promoteStaging()
+                        .thenReturn(BillsSyncResult.builder()
+                                .saved(staged)
+                                .failed(0)
+                                .build()))
+                .onErrorResume(error -> collectionManager.dropStaging()
+                        .onErrorResume(dropError -> Mono.empty())
+                        .then(Mono.error(error)))
+                .doOnError(e -> log.error("Swap data tagihan dibatalkan, data lama tetap dipakai: {}", e.getMessage()));
+    }
+
+    /**
+     * Writes only the rows whose content hash differs from the live collection, inserts new SPKs
+     * and removes SPKs that are no longer in the file. Nothing is removed when some rows were
+     * rejected or failed to write, since their SPKs would look missing.
+     */
+    public Mono<BillsSyncResult> deltaSyncBills(String url, CsvIngestReport report) {
+        return collectionManager.loadContentHashes()
+                .flatMap(existing -> {
+                    DeltaTracker tracker = new DeltaTracker(existing);
+                    Flux<Bills> changes = downloadService.downloadAndParseCsv(url, report)
+                            .filter(tracker::isChanged);
+
+                    return bulkWriter.upsert(changes, BillsCollectionManager.LIVE_COLLECTION)
+                            .doOnNext(stats -> tracker.failed = stats.getFailed())
+                            .then(Mono.defer(() -> removeMissing(tracker, report)))
+                            .timeout(Duration.ofMinutes(10))
+                            .then(Mono.fromCallable(tracker::toResult))
+                            .doFinally(signal -> billsCache.invalidate(tracker.touchedSpks()));
+                })
+                .doOnSuccess(result -> log.info("Delta tagihan: +{} ~{} -{} ={}",
+                        result.getAdded(), result.getChanged(), result.getRemoved(), result.getUnchanged()));
+    }
+
+    private Mono<Void> removeMissing(DeltaTracker tracker, CsvIngestReport report) {
+        if (report.getRowsAccepted() == 0) {
+            return Mono.error(new IllegalStateException("File tidak berisi data tagihan yang valid, penghapusan dibatalkan"));
+        }
+
+        List<String> missing = tracker.missingSpks();
+        if (missing.isEmpty()) {
+            return Mono.empty();
+        }
+        if (report.isIncomplete() || tracker.failed > 0) {
+            log.warn("Penghapusan {} SPK dilewati: {} baris ditolak, {} gagal ditulis",
+                    missing.size(), report.getRowsRejected(), tracker.failed);
+            tracker.removalsSkipped = missing.size();
+            tracker.removedSpks.clear();
+            return Mono.empty();
+        }
+
+        return Flux.fromIterable(missing)
+                .buffer(DELETE_BATCH_SIZE)
+                .concatMap(collectionManager::removeBySpk)
+                .doOnNext(removed -> tracker.removed += removed)
+                .then();
+    }
+
+    /**
+     * Staging is written with upserts into a fresh collection, so it ends up with exactly one
+     * document per distinct SPK. The upsert count is not used: a batch retried after a timeout
+     * may already have been applied, and its rows then count as matched. Staging is also
+     * checked against the source: rows the parser rejected would silently vanish from live, so
+     * they stop the swap.
+     */
+    private Mono<Long> validateStaging(long staged, BillsWriteStats stats, CsvIngestReport report) {
+        if (staged == 0) {
+            return Mono.error(new IllegalStateException("File tidak berisi data tagihan yang valid"));
+        }
+        if (report.isIncomplete()) {
+            return Mono.error(new IllegalStateException(String.format(
+                    "%d dari %d baris file ditolak, data lama tetap dipakai: %s",
+                    report.getRowsRejected(), report.getRowsRead(), report.getSampledErrors())));
+        }
+        if (staged != report.getRowsAccepted()) {
+            return Mono.error(new IllegalStateException(String.format(
+                    "Jumlah data staging (%d) tidak sama dengan jumlah baris file (%d)",
+                    staged, report.getRowsAccepted())));
+        }
+        if (stats.getFailed() > 0) {
+            return Mono.error(new IllegalStateException(String.format(
+                    "%d data gagal ditulis ke staging", stats.getFailed())));
+        }
+        if (staged != stats.getDistinctSpks()) {
+            return Mono.error(new IllegalStateException(String.format(
+                    "Jumlah data staging (%d) tidak sama dengan jumlah SPK yang ditulis (%d)",
+                    staged, stats.getDistinctSpks())));
+        }
+        return Mono.just(staged);
+    }
+
+    public Mono<Long> rollbackBills() {
+        return collectionManager.rollback()
+                .doFinally(signal -> billsCache.invalidateAll());
+    }
+
+    private boolean isTransient(Throwable throwable) {
+        return throwable instanceof MongoTimeoutException ||
+                throwable instanceof TimeoutException;
+    }
 
     public Mono<Long> saveAndDeleteBillsReactive(String url) {
-        AtomicLong successCount = new AtomicLong(0);
-        AtomicLong errorCount = new AtomicLong(0);
+        return replaceBillsReactive(url, new CsvIngestReport())
+                .map(BillsWriteStats::getWritten);
+    }
 
+    public Mono<BillsWriteStats> replaceBillsReactive(String url, CsvIngestReport report) {
         return billsRepo.deleteAll()
                 .timeout(Duration.ofSeconds(30))
                 .retryWhen(Retry.backoff(3, Duration.ofSeconds(2))
                         .maxBackoff(Duration.ofSeconds(10))
-                        .filter(throwable ->
-                                throwable instanceof MongoTimeoutException ||
-                                        throwable instanceof TimeoutException
-                        )
+                        .filter(this::isTransient)
                         .doBeforeRetry(signal ->
                                 log.warn("Retry delete operation, attempt: {}", signal.totalRetries() + 1)
                         )
@@ -44,62 +199,89 @@ public class BillsService {
                     log.error("Gagal menghapus data lama: {}", error.getMessage());
                     return Mono.empty();
                 })
-                .thenMany(downloadService.downloadAndParseCsv(url))
-                .buffer(200)
-                .concatMap(batch -> {
-                    log.info("Memproses batch sejumlah {} ke MongoDB...", batch.size());
-
-                    return billsRepo.saveAll(batch)
-                            .timeout(Duration.ofSeconds(30))
-                            .retryWhen(Retry.backoff(3, Duration.ofSeconds(2))
-                                    .maxBackoff(Duration.ofSeconds(10))
-                                    .filter(throwable ->
-                                            throwable instanceof MongoTimeoutException ||
-                                                    throwable instanceof TimeoutException
-                                    )
-                                    .doBeforeRetry(signal ->
-                                            log.warn("Retry batch save, attempt: {}, batch size: {}",
-                                                    signal.totalRetries() + 1, batch.size())
-                                    )
-                            )
-                            .doOnNext(saved -> successCount.incrementAndGet())
-                            .onErrorResume(error -> {
-                                log.warn("Batch insert gagal ({}), mencoba satu per satu", error.getMessage());
-
-                                return Flux.fromIterable(batch)
-                                        .flatMap(bill ->
-                                                        billsRepo.save(bill)
-                                                                .timeout(Duration.ofSeconds(10))
-                                                                .retryWhen(Retry.backoff(2, Duration.ofSeconds(1))
-                                                                        .maxBackoff(Duration.ofSeconds(5))
-                                                                        .filter(throwable ->
-                                                                                throwable instanceof MongoTimeoutException ||
-                                                                                        throwable instanceof TimeoutException
-                                                                        )
-                                                                )
-                                                                .doOnSuccess(saved -> successCount.incrementAndGet())
-                                                                .onErrorResume(individualError -> {
-                                                                    errorCount.incrementAndGet();
-                                                                    log.warn("Gagal menyimpan data setelah retry: {}",
-                                                                            individualError.getMessage());
-                                                                    return Mono.empty();
-                                                                })
-                                                , 10);
-                            });
-                })
-                .count()
+                .then(Mono.defer(() -> bulkWriter.upsert(
+                        downloadService.downloadAndParseCsv(url, report), BillsCollectionManager.LIVE_COLLECTION)))
                 .timeout(Duration.ofMinutes(10))
-                .doOnSuccess(total -> {
+                .doOnSuccess(stats -> {
                     log.info("Proses sinkronisasi selesai!");
-                    log.info("Berhasil disimpan: {}", successCount.get());
-                    if (errorCount.get() > 0) {
-                        log.warn("Gagal disimpan: {}", errorCount.get());
+                    log.info("Berhasil disimpan: {}", stats.getWritten());
+                    if (stats.getFailed() > 0) {
+                        log.warn("Gagal disimpan: {}", stats.getFailed());
                     }
                 })
-                .doOnError(e -> log.error("Terjadi kegagalan: {}", e.getMessage()))
-                .map(total -> successCount.get());
+                .doOnError(e -> log.error("Terjadi kegagalan: {}", e.getMessage()));
     }
+
     public Mono<Bills> findBillBySpk(String spk) {
-        return billsRepo.findByNoSpk((spk));
+        return billsCache.get(spk, billsRepo::findByNoSpk);
+    }
+
+    /**
+     * Classifies each incoming row against the hashes loaded from the live collection.
+     * Only used from a single sequential stream.
+     */
+    private static final class DeltaTracker {
+
+        private final Map<String, Long> existing;
+        private final Set<String> seen = new HashSet<>();
+        private final List<String> changedSpks = new ArrayList<>();
+        private final List<String> removedSpks = new ArrayList<>();
+        private long added;
+        private long changed;
+        private long unchanged;
+        private long removed;
+        private long failed;
+        private long removalsSkipped;
+
+        private DeltaTracker(Map<String, Long> existing) {
+            this.existing = existing;
+        }
+
+        private boolean isChanged(Bills bill) {
+            String spk = bill.getNoSpk();
+            seen.add(spk);
+            if (!existing.containsKey(spk)) {
+                added++;
+                return true;
+            }
+            Long previousHash = existing.get(spk);
+            if (previousHash != null && previousHash.equals(bill.getContentHash())) {
+                unchanged++;
+                return false;
+            }
+            changed++;
+            changedSpks.add(spk);
+            return true;
+        }
+
+        private List<String> missingSpks() {
+            existing.keySet().forEach(spk -> {
+                if (!seen.contains(spk)) {
+                    removedSpks.add(spk);
+                }
+            });
+            return removedSpks;
+        }
+
+        /**
+         * SPKs whose cached bill may now be stale: rewritten or (about to be) removed.
+         */
+        private List<String> touchedSpks() {
+            List<String> touched = new ArrayList<>(changedSpks);
+            touched.addAll(removedSpks);
+            return touched;
+        }
+
+        private BillsSyncResult toResult() {
+            return BillsSyncResult.builder()
+                    .saved(added + changed - failed)
+                    .failed(failed)
+                    .added(added)
+                    .changed(changed)
+                    .removed(removed)
+                    .unchanged(unchanged)
+                    .removalsSkipped(removalsSkipped)
+                    .build();
+        }
     }
-}
\ No newline at end of file
+}
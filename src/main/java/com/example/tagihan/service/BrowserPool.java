@@ -0,0 +1,255 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.config.PdfSettings;
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.BrowserType;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Playwright;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Pool of long-lived headless Chromium instances.
+ * Playwright objects are not thread safe, so every browser is owned by one dedicated thread
+ * and all work against it is submitted to that thread. Each lease gets a fresh
+ * {@link BrowserContext} so renders never share cookies, storage or open pages.
+ * A worker whose render timed out is still stuck in the hung call, so it is not returned to
+ * the pool: its browser is killed and a new worker takes its place.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pdf.engine", havingValue = "chromium", matchIfMissing = true)
+public class BrowserPool {
+
+    private final PdfSettings pdfSettings;
+    private final List<BrowserWorker> workers = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<BrowserWorker> idleWorkers;
+    private volatile boolean closed = false;
+
+    public BrowserPool(PdfSettings pdfSettings) {
+        this.pdfSettings = pdfSettings;
+        this.idleWorkers = new ArrayBlockingQueue<>(Math.max(1, pdfSettings.getPoolSize()));
+    }
+
+    @PostConstruct
+    public void init() {
+        int size = Math.max(1, pdfSettings.getPoolSize());
+        for (int i = 0; i < size; i++) {
+            BrowserWorker worker = new BrowserWorker(i);
+            workers.add(worker);
+            idleWorkers.add(worker);
+            if (pdfSettings.isWarmUp()) {
+                worker.warmUp();
+            }
+        }
+        log.info("Browser pool initialized with {} browsers (warm up: {})", size, pdfSettings.isWarmUp());
+    }
+
+    /**
+     * Runs {@code action} against a fresh page on one of the pooled browsers.
+     * The page and its context are closed once the action returns.
+     */
+    public <T> T withPage(Function<Page, T> action) {
+        BrowserWorker worker = acquire();
+        try {
+            return worker.execute(action);
+        } finally {
+            release(worker.hung ? replace(worker) : worker);
+        }
+    }
+
+    public int getPoolSize() {
+        return workers.size();
+    }
+
+    public int getIdleCount() {
+        return idleWorkers.size();
+    }
+
+    private BrowserWorker acquire() {
+        if (closed) {
+            throw new IllegalStateException("Browser pool is shut down");
+        }
+        try {
+            BrowserWorker worker = idleWorkers.poll(pdfSettings.getAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            if (worker == null) {
+                throw new IllegalStateException("Timed out waiting for a free browser after " + pdfSettings.getAcquireTimeout());
+            }
+            return worker;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a free browser", e);
+        }
+    }
+
+    private BrowserWorker replace(BrowserWorker hung) {
+        hung.abandon();
+        BrowserWorker fresh = new BrowserWorker(hung.id);
+        workers.replaceAll(worker -> worker == hung ? fresh : worker);
+        if (pdfSettings.isWarmUp()) {
+            fresh.warmUp();
+        }
+        log.warn("Browser {} replaced after a hung render", hung.id);
+        return fresh;
+    }
+
+    private void release(BrowserWorker worker) {
+        if (!closed) {
+            idleWorkers.offer(worker);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        log.info("Shutting down browser pool...");
+        workers.forEach(BrowserWorker::close);
+        idleWorkers.clear();
+        log.info("Browser pool shut down");
+    }
+
+    private final class BrowserWorker {
+
+        private final int id;
+        private final ExecutorService thread;
+        private volatile Playwright playwright;
+        private volatile Browser browser;
+        private int renders;
+        private volatile boolean broken;
+        private volatile boolean hung;
+
+        private BrowserWorker(int id) {
+            this.id = id;
+            this.thread = Executors.newSingleThreadExecutor(runnable -> {
+                Thread t = new Thread(runnable, "pdf-browser-" + id);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        private void warmUp() {
+            thread.execute(() -> {
+                try {
+                    ensureHealthy();
+                } catch (Exception e) {
+                    log.warn("Failed to warm up browser {}: {}", id, e.getMessage());
+                }
+            });
+        }
+
+        private <T> T execute(Function<Page, T> action) {
+            Future<T> future = thread.submit(() -> {
+                ensureHealthy();
+                BrowserContext context = browser.newContext();
+                try {
+                    Page page = context.newPage();
+                    return action.apply(page);
+                } finally {
+                    context.close();
+                    renders++;
+                    if (renders >= pdfSettings.getMaxRendersPerBrowser()) {
+                        log.info("Browser {} served {} renders, recycling", id, renders);
+                        closeBrowser();
+                    }
+                }
+            });
+
+            try {
+                return future.get(pdfSettings.getRenderTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                hung = true;
+                throw new IllegalStateException("PDF render timed out after " + pdfSettings.getRenderTimeout(), e);
+            } catch (ExecutionException e) {
+                broken = true;
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("PDF render failed", cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while rendering PDF", e);
+            }
+        }
+
+        /**
+         * Runs on the worker thread. Relaunches the browser when it was never started,
+         * got disconnected, or the previous render on it failed.
+         */
+        private void ensureHealthy() {
+            if (browser != null && !broken && browser.isConnected()) {
+                return;
+            }
+            if (browser != null) {
+                log.warn("Browser {} is unhealthy, relaunching", id);
+            }
+            closeBrowser();
+            playwright = Playwright.create();
+            browser = playwright.chromium().launch(
+                    new BrowserType.LaunchOptions().setHeadless(pdfSettings.isHeadless())
+            );
+            broken = false;
+            log.info("Browser {} launched", id);
+        }
+
+        private void closeBrowser() {
+            try {
+                if (browser != null) {
+                    browser.close();
+                }
+                if (playwright != null) {
+                    playwright.close();
+                }
+            } catch (Exception e) {
+                log.warn("Error closing browser {}: {}", id, e.getMessage());
+            } finally {
+                browser = null;
+                playwright = null;
+                renders = 0;
+            }
+        }
+
+        /**
+         * Called from outside the worker thread after a render hung. Closing Playwright kills
+         * the driver and browser processes, which unblocks the stuck call on the worker thread.
+         */
+        private void abandon() {
+            thread.shutdownNow();
+            Playwright stuck = playwright;
+            try {
+                if (stuck != null) {
+                    stuck.close();
+                }
+            } catch (Exception e) {
+                log.warn("Error killing hung browser {}: {}", id, e.getMessage());
+            }
+        }
+
+        private void close() {
+            Future<?> future = thread.submit(this::closeBrowser);
+            try {
+                future.get(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                log.warn("Browser {} did not close cleanly: {}", id, e.getMessage());
+            }
+            thread.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.entity.Visit;
+import com.example.tagihan.event.StateExpiredEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * {@link StateStore} on a Caffeine cache. Conversations expire after a period without
+ * reads or writes; the system scheduler removes them promptly instead of on the next access,
+ * so the user is told their draft was dropped close to when it happened.
+ */
+@Slf4j
+@Component
+public class CaffeineStateStore implements StateStore {
+
+	private static final int BASE_STATE_BYTES = 400;
+	private static final int STRING_OVERHEAD_BYTES = 40;
+
+	private final Cache<String, StateData> states;
+
+	public CaffeineStateStore(ApplicationEventPublisher publisher,
+							  MeterRegistry meterRegistry,
+							  @Value("${state.ttl-minutes:30}") long ttlMinutes,
+							  @Value("${state.capacity:1000}") long capacity) {
+		this.states = Caffeine.newBuilder()
+				.expireAfterAccess(Duration.ofMinutes(ttlMinutes))
+				.maximumSize(capacity)
+				.scheduler(Scheduler.systemScheduler())
+				.removalListener((String jid, StateData stateData, RemovalCause cause) -> {
+					if (jid != null && stateData != null && cause.wasEvicted()) {
+						log.info("State for JID {} dropped ({})", jid, cause);
+						publisher.publishEvent(new StateExpiredEvent(this, jid, stateData, cause == RemovalCause.EXPIRED));
+					}
+				})
+				.build();
+
+		Gauge.builder("state.store.size", this, CaffeineStateStore::size)
+				.description("Conversations in progress")
+				.register(meterRegistry);
+		Gauge.builder("state.store.estimated_bytes", this, CaffeineStateStore::estimatedBytes)
+				.description("Estimated heap held by conversations in progress")
+				.baseUnit("bytes")
+				.register(meterRegistry);
+		log.info("State store ready: TTL {} menit, kapasitas {}", ttlMinutes, capacity);
+	}
+
+	@Override
+	public StateData get(String jid) {
+		return states.getIfPresent(jid);
+	}
+
+	@Override
+	public void put(String jid, StateData stateData) {
+		states.put(jid, stateData);
+	}
+
+	@Override
+	public void remove(String jid) {
+		states.invalidate(jid);
+	}
+
+	@Override
+	public boolean contains(String jid) {
+		return states.asMap().containsKey(jid);
+	}
+
+	@Override
+	public long size() {
+		return states.estimatedSize();
+	}
+
+	@Override
+	public long estimatedBytes() {
+		return states.asMap().entrySet().stream()
+				.mapToLong(entry -> stringBytes(entry.getKey()) + stateBytes(entry.getValue()))
+				.sum();
+	}
+
+	private static long stateBytes(StateData stateData) {
+		long bytes = BASE_STATE_BYTES;
+		Visit visit = stateData.getVisit();
+		if (visit != null) {
+			for (String value : new String[]{
+					visit.getId(), visit.getUserId(), visit.getSpk(), visit.getName(), visit.getAddress(),
+					visit.getNote(), visit.getImageUrl(), visit.getUsaha(), visit.getInterested()}) {
+				bytes += stringBytes(value);
+			}
+		}
+		return bytes;
+	}
+
+	private static long stringBytes(String value) {
+		return value == null ? 0 : STRING_OVERHEAD_BYTES + value.length();
+	}
+}
@@ -0,0 +1,68 @@
+package com.example.tagihan.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsResource;
+import org.springframework.data.mongodb.gridfs.ReactiveGridFsTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * GridFS storage for documents waiting in the outbox ({@code outbox.spool-bucket}).
+ * The outbox is shared by every instance and so is the bucket, so whichever instance claims
+ * a message can send its document; a multi-megabyte PDF is held on the heap only until it is
+ * stored, and is sent by streaming its chunks into the multipart body.
+ */
+@Slf4j
+@Component
+public class DocumentSpool {
+
+    private final ReactiveGridFsTemplate gridFs;
+
+    public DocumentSpool(ReactiveMongoTemplate mongoTemplate,
+                         @Value("${outbox.spool-bucket:outbox}") String bucket) {
+        this.gridFs = new ReactiveGridFsTemplate(mongoTemplate.getMongoDatabaseFactory(), mongoTemplate.getConverter(), bucket);
+        log.info("Spool dokumen outbox di GridFS bucket {}", bucket);
+    }
+
+    /**
+     * @return the id of the stored document
+     */
+    public Mono<String> write(String fileName, byte[] content) {
+        Flux<DataBuffer> data = Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(content)));
+        return gridFs.store(data, fileName)
+                .map(ObjectId::toHexString);
+    }
+
+    /**
+     * Streams the document; every subscription reads it again, so a retried send gets the
+     * whole file.
+     */
+    public Flux<DataBuffer> read(String id) {
+        return Flux.defer(() -> gridFs.findOne(byId(id))
+                .flatMap(gridFs::getResource)
+                .flatMapMany(ReactiveGridFsResource::getDownloadStream));
+    }
+
+    public Mono<Void> delete(String id) {
+        if (id == null) {
+            return Mono.empty();
+        }
+        return gridFs.delete(byId(id))
+                .onErrorResume(error -> {
+                    log.warn("Gagal menghapus spool {}: {}", id, error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    private static Query byId(String id) {
+        return Query.query(Criteria.where("_id").is(new ObjectId(id)));
+    }
+}
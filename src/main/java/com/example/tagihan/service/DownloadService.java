@@ -1,10 +1,12 @@
 package com.example.tagihan.service;
 
+import com.example.tagihan.configuration.UpstreamClient;
+import com.example.tagihan.dto.CsvIngestReport;
 import com.example.tagihan.entity.Bills;
+import com.example.tagihan.util.CsvTokenizer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.core.ResolvableType;
-import org.springframework.core.codec.StringDecoder;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
@@ -14,16 +16,43 @@ import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 @Slf4j
 @Service
 public class DownloadService {
 
+    private static final int MIN_COLUMNS = 30;
+    private static final int COLUMN_NO_SPK = 3;
+    private static final Map<Integer, String> NUMERIC_COLUMN_NAMES = Map.ofEntries(
+            Map.entry(13, "plafond"),
+            Map.entry(14, "debitTray"),
+            Map.entry(15, "interest"),
+            Map.entry(16, "principal"),
+            Map.entry(17, "installment"),
+            Map.entry(18, "lastInterest"),
+            Map.entry(19, "lastPrincipal"),
+            Map.entry(20, "lastInstallment"),
+            Map.entry(21, "fullPayment"),
+            Map.entry(22, "minInterest"),
+            Map.entry(23, "minPrincipal"),
+            Map.entry(24, "penaltyInterest"),
+            Map.entry(25, "penaltyPrincipal"),
+            Map.entry(29, "titipan"),
+            Map.entry(30, "fixedInterest")
+    );
+
     private final WebClient webClient;
 
-    public DownloadService() {
-        this.webClient = WebClient.builder()
+    public DownloadService(WebClient.Builder webClientBuilder,
+                           @Qualifier("downloadsClient") UpstreamClient downloadsClient) {
+        this.webClient = webClientBuilder
+                .clientConnector(downloadsClient.connector())
                 .codecs(clientCodecConfigurer -> clientCodecConfigurer
                         .defaultCodecs()
                         .maxInMemorySize(50 * 1024 * 1024))
@@ -31,44 +60,30 @@ public class DownloadService {
     }
 
     public Flux<Bills> downloadAndParseCsv(String url) {
-        return webClient.get()
-                .uri(URI.create(url))
-                .retrieve()
-                .bodyToFlux(DataBuffer.class)
-                .transform(dataBufferFlux ->
-                        StringDecoder.textPlainOnly().decode(
-                                dataBufferFlux,
-                                ResolvableType.forClass(String.class),
-                                null,
-                                null)
-                )
-                .skip(1)
-                .filter(line -> !line.isBlank())
-                .map(line -> line.split(","))
-                .filter(columns -> columns.length >= 30)
-                .map(columns -> {
-                    for (int i = 0; i < columns.length; i++) {
-                        columns[i] = removeQuotes(columns[i]);
-                    }
-                    return columns;
+        CsvIngestReport report = new CsvIngestReport();
+        return downloadAndParseCsv(url, report)
+                .doOnComplete(() -> log.info("CSV selesai diproses: {}", report));
+    }
+
+    /**
+     * Streams the CSV at {@code url} straight from the network buffers into {@link Bills}.
+     * Rows that cannot be used and numeric fields that cannot be parsed are recorded in {@code report}.
+     * A row repeating an earlier SPK is rejected, so every ingest mode keeps the first row.
+     */
+    public Flux<Bills> downloadAndParseCsv(String url, CsvIngestReport report) {
+        return Flux.defer(() -> {
+                    BillsCsvReader reader = new BillsCsvReader(report);
+                    return webClient.get()
+                            .uri(URI.create(url))
+                            .retrieve()
+                            .bodyToFlux(DataBuffer.class)
+                            .concatMapIterable(reader::read)
+                            .concatWith(Flux.defer(() -> Flux.fromIterable(reader.finish())));
                 })
-                .map(this::mapToBill)
                 .doOnError(e -> log.error("Streaming error: {}", e.getMessage()))
                 .subscribeOn(Schedulers.boundedElastic());
     }
 
-    private String removeQuotes(String value) {
-        if (value == null) {
-            return null;
-        }
-        value = value.trim();
-        if (value.startsWith("\"") && value.endsWith("\"") && value.length() > 1) {
-            return value.substring(1, value.length() - 1);
-        }
-        return value;
-    }
-
-
     public <T> Mono<T> downloadObject(String url, Class<T> responseType) {
         return webClient.get()
                 .uri(url)
@@ -90,46 +105,118 @@ public class DownloadService {
                 .bodyToMono(byte[].class);
     }
 
-    private Bills mapToBill(String[] line) {
-        return Bills.builder()
-                .customerId(line[0])
-                .wilayah(line[1])
-                .branch(line[2])
-                .noSpk(line[3])
-                .officeLocation(line[4])
-                .product(line[5])
-                .name(line[6])
-                .address(line[7])
-                .payDown(line[8])
-                .realization(line[9])
-                .dueDate(line[10])
-                .collectStatus(line[11])
-                .dayLate(line[12])
-                .plafond(parseLong(line[13]))
-                .debitTray(parseLong(line[14]))
-                .interest(parseLong(line[15]))
-                .principal(parseLong(line[16]))
-                .installment(parseLong(line[17]))
-                .lastInterest(parseLong(line[18]))
-                .lastPrincipal(parseLong(line[19]))
-                .lastInstallment(parseLong(line[20]))
-                .fullPayment(parseLong(line[21]))
-                .minInterest(parseLong(line[22]))
-                .minPrincipal(parseLong(line[23]))
-                .penaltyInterest(parseLong(line[24]))
-                .penaltyPrincipal(parseLong(line[25]))
-                .accountOfficer(line[26])
-                .kios(line.length > 28 ? line[28] : "")
-                .titipan(line.length > 29 ? parseLong(line[29]) : 0L)
-                .fixedInterest(line.length > 30 ? parseLong(line[30]) : 0L)
-                .build();
-    }
+    /**
+     * Per-subscription parsing state: the tokenizer carries partial records across buffers.
+     */
+    private static final class BillsCsvReader {
+
+        private final CsvTokenizer tokenizer = new CsvTokenizer();
+        private final CsvIngestReport report;
+        private final List<Bills> batch = new ArrayList<>();
+        private final Set<String> seenSpks = new HashSet<>();
+        private boolean headerSkipped;
+
+        private BillsCsvReader(CsvIngestReport report) {
+            this.report = report;
+        }
+
+        private List<Bills> read(DataBuffer buffer) {
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    tokenizer.feed(iterator.next(), this::onRow);
+                }
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+            return drain();
+        }
+
+        private List<Bills> finish() {
+            if (!tokenizer.finish(this::onRow)) {
+                report.inputError("File berakhir di dalam kolom yang diawali tanda kutip");
+            }
+            return drain();
+        }
+
+        private List<Bills> drain() {
+            if (batch.isEmpty()) {
+                return List.of();
+            }
+            List<Bills> result = new ArrayList<>(batch);
+            batch.clear();
+            return result;
+        }
+
+        private void onRow(CsvTokenizer.Row row) {
+            if (!headerSkipped) {
+                headerSkipped = true;
+                return;
+            }
+
+            report.rowRead();
+            if (row.getFieldCount() < MIN_COLUMNS) {
+                report.rowRejected(row.getRecordNumber(),
+                        "hanya " + row.getFieldCount() + " kolom, minimal " + MIN_COLUMNS);
+                return;
+            }
+            if (row.isEmpty(COLUMN_NO_SPK)) {
+                report.rowRejected(row.getRecordNumber(), "No SPK kosong");
+                return;
+            }
+            String spk = row.getString(COLUMN_NO_SPK);
+            if (!seenSpks.add(spk)) {
+                report.rowRejected(row.getRecordNumber(), "No SPK " + spk + " sudah ada di baris sebelumnya");
+                return;
+            }
+
+            batch.add(mapToBill(row));
+            report.rowAccepted();
+        }
+
+        private Bills mapToBill(CsvTokenizer.Row row) {
+            return Bills.builder()
+                    .customerId(row.getString(0))
+                    .wilayah(row.getString(1))
+                    .branch(row.getString(2))
+                    .noSpk(row.getString(COLUMN_NO_SPK))
+                    .officeLocation(row.getString(4))
+                    .product(row.getString(5))
+                    .name(row.getString(6))
+                    .address(row.getString(7))
+                    .payDown(row.getString(8))
+                    .realization(row.getString(9))
+                    .dueDate(row.getString(10))
+                    .collectStatus(row.getString(11))
+                    .dayLate(row.getString(12))
+                    .plafond(parseLong(row, 13))
+                    .debitTray(parseLong(row, 14))
+                    .interest(parseLong(row, 15))
+                    .principal(parseLong(row, 16))
+                    .installment(parseLong(row, 17))
+                    .lastInterest(parseLong(row, 18))
+                    .lastPrincipal(parseLong(row, 19))
+                    .lastInstallment(parseLong(row, 20))
+                    .fullPayment(parseLong(row, 21))
+                    .minInterest(parseLong(row, 22))
+                    .minPrincipal(parseLong(row, 23))
+                    .penaltyInterest(parseLong(row, 24))
+                    .penaltyPrincipal(parseLong(row, 25))
+                    .accountOfficer(row.getString(26))
+                    .kios(row.getString(28))
+                    .titipan(parseLong(row, 29))
+                    .fixedInterest(parseLong(row, 30))
+                    .contentHash(row.contentHash())
+                    .build();
+        }
 
-    private long parseLong(String value) {
-        try {
-            return Long.parseLong(value.trim());
-        } catch (NumberFormatException e) {
-            return 0L;
+        private long parseLong(CsvTokenizer.Row row, int index) {
+            long value = row.getLong(index);
+            if (value == CsvTokenizer.NOT_A_NUMBER) {
+                report.fieldError(row.getRecordNumber(), NUMERIC_COLUMN_NAMES.getOrDefault(index, String.valueOf(index)),
+                        row.getString(index));
+                return 0L;
+            }
+            return value;
         }
     }
-}
\ No newline at end of file
+}
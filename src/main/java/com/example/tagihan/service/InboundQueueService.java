@@ -0,0 +1,389 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.dispatcher.WhatsAppMessageDispatcher;
+import com.example.tagihan.dto.WebhookPayload;
+import com.example.tagihan.entity.InboundMessage;
+import com.example.tagihan.entity.InboundStatus;
+import com.example.tagihan.exception.NonRetryableDispatchException;
+import com.example.tagihan.repository.InboundMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable queue between the webhook endpoint and the dispatcher.
+ * Every message is written to {@code inbound_message} before the webhook is acknowledged,
+ * then handed to a fixed number of workers through a bounded in-memory buffer. A worker
+ * claims a message atomically before dispatching it, so a message is processed once even
+ * when it is signalled twice. Messages that do not fit in the buffer, failed attempts that
+ * are due again and messages abandoned by a crash are picked up by the poller.
+ * <p>
+ * The claim lease is renewed every third of {@code inbound.lease-seconds} while the handler
+ * runs, so a long command (bills sync, report) is not claimed a second time while it is still
+ * running; only a claim whose instance stopped renewing expires. Renewal and completion are
+ * fenced by the claim token, so a worker that lost its claim cannot overwrite the new one.
+ * <p>
+ * A sender's messages are handled strictly in {@code receivedAt} order: a message is only
+ * claimed while no earlier message of the same sender is PENDING or still being dispatched,
+ * and finishing a message signals the sender's next one. A failed message therefore holds
+ * the sender's later messages until it succeeds or is dead-lettered.
+ * <p>
+ * A message that submitted a report job stays PROCESSING, with its lease renewed, until that
+ * job finishes; the worker itself is released as soon as the handler returns. Report jobs
+ * live in memory only, so a restart re-dispatches the message instead of losing the report.
+ */
+@Slf4j
+@Service
+public class InboundQueueService {
+
+    private final InboundMessageRepository inboundMessageRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final WhatsAppMessageDispatcher whatsAppMessageDispatcher;
+    private final ReportJobService reportJobService;
+
+    private final int workers;
+    private final int maxAttempts;
+    private final Duration lease;
+
+    private final BlockingQueue<String> buffer;
+    private final Sinks.Many<String> sink;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong pendingDepth = new AtomicLong();
+    private final AtomicLong deadDepth = new AtomicLong();
+    private final Counter processed;
+    private final Counter retried;
+    private final Counter deadLettered;
+    private Disposable workerSubscription;
+
+    public InboundQueueService(InboundMessageRepository inboundMessageRepository,
+                               ReactiveMongoTemplate mongoTemplate,
+                               WhatsAppMessageDispatcher whatsAppMessageDispatcher,
+                               ReportJobService reportJobService,
+                               MeterRegistry meterRegistry,
+                               @Value("${inbound.workers:8}") int workers,
+                               @Value("${inbound.capacity:1000}") int capacity,
+                               @Value("${inbound.max-attempts:5}") int maxAttempts,
+                               @Value("${inbound.lease-seconds:120}") long leaseSeconds) {
+        this.inboundMessageRepository = inboundMessageRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.whatsAppMessageDispatcher = whatsAppMessageDispatcher;
+        this.reportJobService = reportJobService;
+        this.workers = Math.max(1, workers);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(buffer);
+
+        Gauge.builder("inbound.queue.buffered", buffer, BlockingQueue::size)
+                .description("Messages signalled to the workers but not yet picked up")
+                .register(meterRegistry);
+        Gauge.builder("inbound.queue.in_flight", inFlight, AtomicInteger::get)
+                .description("Messages currently being dispatched")
+                .register(meterRegistry);
+        Gauge.builder("inbound.queue.pending", pendingDepth, AtomicLong::get)
+                .description("PENDING messages in MongoDB as of the last poll")
+                .register(meterRegistry);
+        Gauge.builder("inbound.queue.dead", deadDepth, AtomicLong::get)
+                .description("DEAD messages in MongoDB as of the last poll")
+                .register(meterRegistry);
+        this.processed = meterRegistry.counter("inbound.queue.processed");
+        this.retried = meterRegistry.counter("inbound.queue.retried");
+        this.deadLettered = meterRegistry.counter("inbound.queue.dead_lettered");
+    }
+
+    @PostConstruct
+    public void start() {
+        workerSubscription = sink.asFlux()
+                .flatMap(id -> process(id)
+                        .subscribeOn(Schedulers.boundedElastic()), workers)
+                .subscribe();
+        log.info("Inbound queue started with {} workers, buffer {}", workers, buffer.remainingCapacity());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (workerSubscription != null) {
+            workerSubscription.dispose();
+        }
+        log.info("Inbound queue stopped, {} messages in flight will be reclaimed after their lease", inFlight.get());
+    }
+
+    /**
+     * Persists the message and signals a worker.
+     *
+     * @return {@code false} if the message was already queued earlier (webhook redelivery)
+     */
+    public Mono<Boolean> enqueue(WebhookPayload payload) {
+        Instant now = Instant.now();
+        InboundMessage message = InboundMessage.builder()
+                .id(payload.getPayload() != null ? payload.getPayload().getId() : null)
+                .payload(payload)
+                .sender(payload.getPayload() != null ? payload.getPayload().getFrom() : null)
+                .status(InboundStatus.PENDING)
+                .attempts(0)
+                .receivedAt(now)
+                .nextAttemptAt(now)
+                .build();
+
+        return inboundMessageRepository.insert(message)
+                .map(saved -> {
+                    signal(saved.getId());
+                    return true;
+                })
+                .onErrorResume(DuplicateKeyException.class, e -> {
+                    log.info("Message {} already queued, ignoring redelivery", message.getId());
+                    return Mono.just(false);
+                });
+    }
+
+    /**
+     * Re-signals due and abandoned messages. Also runs right after startup, which is how
+     * messages left over from a previous run are recovered.
+     */
+    @Scheduled(fixedDelayString = "${inbound.poll-interval-ms:15000}")
+    public void poll() {
+        int room = buffer.remainingCapacity();
+        Query due = Query.query(claimableCriteria(Instant.now()))
+                .with(Sort.by(Sort.Direction.ASC, "receivedAt"))
+                .limit(Math.max(1, room));
+        due.fields().include("_id");
+
+        mongoTemplate.find(due, InboundMessage.class)
+                .doOnNext(message -> signal(message.getId()))
+                .count()
+                .flatMap(signalled -> refreshDepth().thenReturn(signalled))
+                .subscribe(
+                        signalled -> {
+                            if (signalled > 0) {
+                                log.info("Inbound poller re-signalled {} messages", signalled);
+                            }
+                        },
+                        error -> log.error("Inbound poller failed: {}", error.getMessage())
+                );
+    }
+
+    private void signal(String id) {
+        Sinks.EmitResult result;
+        do {
+            result = sink.tryEmitNext(id);
+        } while (result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+
+        if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+            log.warn("Inbound buffer full, message {} stays in MongoDB for the poller", id);
+        } else if (result.isFailure()) {
+            log.warn("Could not signal message {}: {}", id, result);
+        }
+    }
+
+    private Mono<Void> process(String id) {
+        return claim(id)
+                .flatMap(message -> {
+                    inFlight.incrementAndGet();
+                    Disposable heartbeat = Flux.interval(heartbeatInterval())
+                            .concatMap(tick -> renew(message))
+                            .subscribe(null, error -> log.warn("Lease renewal for message {} failed: {}", id, error.getMessage()));
+                    return whatsAppMessageDispatcher.dispatch(message.getPayload())
+                            .then(Mono.fromRunnable(() -> completeAfterJob(message, heartbeat)))
+                            .onErrorResume(error -> markFailed(message, error)
+                                    .doFinally(signal -> heartbeat.dispose()))
+                            .doOnCancel(heartbeat::dispose)
+                            .doFinally(signal -> inFlight.decrementAndGet());
+                })
+                .onErrorResume(error -> {
+                    log.error("Inbound worker error for message {}: {}", id, error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Marks the message done once the report job it submitted, if any, has finished. Runs
+     * outside the worker so a long report queue does not hold the inbound workers.
+     */
+    private void completeAfterJob(InboundMessage message, Disposable heartbeat) {
+        markDispatched(message)
+                .then(Mono.defer(() -> reportJobService.completion(message.getId())))
+                .then(Mono.defer(() -> markDone(message)))
+                .doFinally(signal -> heartbeat.dispose())
+                .subscribe(null, error -> log.error("Could not complete message {}: {}", message.getId(), error.getMessage()));
+    }
+
+    private Mono<InboundMessage> claim(String id) {
+        return mongoTemplate.findById(id, InboundMessage.class)
+                .filterWhen(this::isNextForSender)
+                .flatMap(message -> claimIfClaimable(id));
+    }
+
+    /**
+     * Whether every earlier message of the same sender has been dispatched or given up on.
+     */
+    private Mono<Boolean> isNextForSender(InboundMessage message) {
+        if (message.getSender() == null || message.getReceivedAt() == null) {
+            return Mono.just(true);
+        }
+        Query earlier = Query.query(new Criteria().andOperator(
+                Criteria.where("sender").is(message.getSender()),
+                new Criteria().orOperator(
+                        Criteria.where("receivedAt").lt(message.getReceivedAt()),
+                        Criteria.where("receivedAt").is(message.getReceivedAt()).and("_id").lt(message.getId())),
+                new Criteria().orOperator(
+                        Criteria.where("status").is(InboundStatus.PENDING),
+                        Criteria.where("status").is(InboundStatus.PROCESSING).and("dispatchedAt").exists(false))));
+        return mongoTemplate.exists(earlier, InboundMessage.class)
+                .map(blocked -> {
+                    if (blocked) {
+                        log.debug("Message {} waits for an earlier message from {}", message.getId(), message.getSender());
+                    }
+                    return !blocked;
+                });
+    }
+
+    /**
+     * Signals the sender's oldest due message, which may have been skipped while this one ran.
+     */
+    private Mono<Void> releaseSender(InboundMessage message) {
+        if (message.getSender() == null) {
+            return Mono.empty();
+        }
+        Query next = Query.query(Criteria.where("sender").is(message.getSender())
+                        .and("status").is(InboundStatus.PENDING)
+                        .and("nextAttemptAt").lte(Instant.now()))
+                .with(Sort.by(Sort.Direction.ASC, "receivedAt"))
+                .limit(1);
+        next.fields().include("_id");
+        return mongoTemplate.findOne(next, InboundMessage.class)
+                .doOnNext(pending -> signal(pending.getId()))
+                .then();
+    }
+
+    private Mono<Void> markDispatched(InboundMessage message) {
+        return mongoTemplate.updateFirst(claimedBy(message), Update.update("dispatchedAt", Instant.now()), InboundMessage.class)
+                .then(Mono.defer(() -> releaseSender(message)));
+    }
+
+    private Mono<InboundMessage> claimIfClaimable(String id) {
+        Instant now = Instant.now();
+        Query query = Query.query(new Criteria().andOperator(
+                Criteria.where("_id").is(id),
+                claimableCriteria(now)));
+        Update update = new Update()
+                .set("status", InboundStatus.PROCESSING)
+                .set("lockedUntil", now.plus(lease))
+                .set("claimToken", UUID.randomUUID().toString())
+                .unset("dispatchedAt")
+                .inc("attempts", 1);
+
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), InboundMessage.class);
+    }
+
+    private Mono<Void> renew(InboundMessage message) {
+        Update update = Update.update("lockedUntil", Instant.now().plus(lease));
+        return mongoTemplate.updateFirst(claimedBy(message), update, InboundMessage.class)
+                .doOnNext(result -> {
+                    if (result.getMatchedCount() == 0) {
+                        log.warn("Message {} lost its claim while being processed", message.getId());
+                    }
+                })
+                .then();
+    }
+
+    private Duration heartbeatInterval() {
+        return Duration.ofMillis(Math.max(1000, lease.toMillis() / 3));
+    }
+
+    /**
+     * Matches the message only while it is still held by this claim.
+     */
+    private Query claimedBy(InboundMessage message) {
+        return Query.query(Criteria.where("_id").is(message.getId())
+                .and("status").is(InboundStatus.PROCESSING)
+                .and("claimToken").is(message.getClaimToken()));
+    }
+
+    private Criteria claimableCriteria(Instant now) {
+        return new Criteria().orOperator(
+                Criteria.where("status").is(InboundStatus.PENDING).and("nextAttemptAt").lte(now),
+                Criteria.where("status").is(InboundStatus.PROCESSING).and("lockedUntil").lt(now));
+    }
+
+    private Mono<Void> markDone(InboundMessage message) {
+        Update update = new Update()
+                .set("status", InboundStatus.DONE)
+                .set("completedAt", Instant.now())
+                .unset("lockedUntil")
+                .unset("claimToken")
+                .unset("dispatchedAt");
+        return mongoTemplate.updateFirst(claimedBy(message), update, InboundMessage.class)
+                .doOnSuccess(result -> {
+                    if (result.getMatchedCount() == 0) {
+                        log.warn("Message {} finished after losing its claim, status left to the new claim", message.getId());
+                    } else {
+                        processed.increment();
+                    }
+                })
+                .then(Mono.defer(() -> releaseSender(message)));
+    }
+
+    private Mono<Void> markFailed(InboundMessage message, Throwable error) {
+        Update update = new Update()
+                .set("lastError", String.valueOf(error.getMessage()))
+                .unset("lockedUntil")
+                .unset("claimToken")
+                .unset("dispatchedAt");
+
+        if (error instanceof NonRetryableDispatchException) {
+            log.error("Message {} failed and its command is not retryable, moved to dead letter: {}",
+                    message.getId(), error.getMessage());
+            update.set("status", InboundStatus.DEAD);
+            deadLettered.increment();
+        } else if (message.getAttempts() >= maxAttempts) {
+            log.error("Message {} failed {} times, moved to dead letter: {}",
+                    message.getId(), message.getAttempts(), error.getMessage());
+            update.set("status", InboundStatus.DEAD);
+            deadLettered.increment();
+        } else {
+            Duration backoff = Duration.ofSeconds(Math.min(300, 1L << (message.getAttempts() * 2)));
+            log.warn("Message {} failed (attempt {}), retrying in {}s: {}",
+                    message.getId(), message.getAttempts(), backoff.toSeconds(), error.getMessage());
+            update.set("status", InboundStatus.PENDING)
+                    .set("nextAttemptAt", Instant.now().plus(backoff));
+            retried.increment();
+        }
+
+        return mongoTemplate.updateFirst(claimedBy(message), update, InboundMessage.class)
+                .then(Mono.defer(() -> releaseSender(message)));
+    }
+
+    private Mono<Void> refreshDepth() {
+        return inboundMessageRepository.countByStatus(InboundStatus.PENDING)
+                .doOnNext(pendingDepth::set)
+                .then(inboundMessageRepository.countByStatus(InboundStatus.DEAD))
+                .doOnNext(deadDepth::set)
+                .then();
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.entity.ConversationState;
+import com.example.tagihan.event.StateExpiredEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind {@link StatePersistence} on the {@code conversation_state} collection.
+ * Changes are collected per JID and written in one unordered bulk operation per flush, so a
+ * conversation that changes several times between flushes is written once, with its latest
+ * content. Every message of a JID is checked against the stored copy, so a conversation that
+ * moved on at another instance, or was finished there, replaces the stale copy held here.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "state.persistence", havingValue = "mongo", matchIfMissing = true)
+public class MongoStatePersistence implements StatePersistence {
+
+	private static final StateData REMOVED = new StateData();
+
+	private final ReactiveMongoTemplate mongoTemplate;
+	private final Duration ttl;
+	private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicBoolean flushing = new AtomicBoolean();
+
+	public MongoStatePersistence(ReactiveMongoTemplate mongoTemplate,
+								 @Value("${state.ttl-minutes:30}") long ttlMinutes) {
+		this.mongoTemplate = mongoTemplate;
+		this.ttl = Duration.ofMinutes(ttlMinutes);
+	}
+
+	@Override
+	public Mono<StateData> resolve(String jid, StateData local) {
+		Pending buffered = pending.get(jid);
+		if (buffered != null) {
+			return buffered.stateData() == REMOVED ? Mono.empty() : Mono.just(buffered.stateData());
+		}
+		Instant oldest = Instant.now().minus(ttl);
+		return mongoTemplate.findById(jid, ConversationState.class)
+				.filter(document -> document.getUpdatedAt() == null || document.getUpdatedAt().isAfter(oldest))
+				.map(document -> {
+					if (local != null && local.getVersion() >= document.getVersion()) {
+						return local;
+					}
+					log.info("State for JID {} resumed from MongoDB: {} (versi {})",
+							jid, document.getCurrentState(), document.getVersion());
+					return StateData.builder()
+							.currentState(document.getCurrentState())
+							.visit(document.getVisit())
+							.version(document.getVersion())
+							.build();
+				});
+	}
+
+	@Override
+	public void saved(String jid, StateData stateData) {
+		pending.put(jid, new Pending(stateData, sequence.incrementAndGet()));
+	}
+
+	@Override
+	public void removed(String jid) {
+		pending.put(jid, new Pending(REMOVED, sequence.incrementAndGet()));
+	}
+
+	@EventListener(StateExpiredEvent.class)
+	public void onStateExpired(StateExpiredEvent event) {
+		removed(event.getJid());
+	}
+
+	@Scheduled(fixedDelayString = "${state.persistence.flush-interval-ms:1000}")
+	public void scheduledFlush() {
+		flush().subscribe(null, error -> log.error("Failed to flush conversation state: {}", error.getMessage()));
+	}
+
+	@Override
+	public Mono<Void> flush() {
+		return Mono.defer(() -> {
+			if (pending.isEmpty() || !flushing.compareAndSet(false, true)) {
+				return Mono.empty();
+			}
+
+			Map<String, Pending> batch = Map.copyOf(pending);
+			ReactiveBulkOperations operations = mongoTemplate.bulkOps(
+					BulkOperations.BulkMode.UNORDERED, ConversationState.class);
+			Instant now = Instant.now();
+			batch.forEach((jid, entry) -> {
+				StateData stateData = entry.stateData();
+				Query byJid = Query.query(Criteria.where("_id").is(jid));
+				if (stateData == REMOVED) {
+					operations.remove(byJid);
+				} else {
+					operations.replaceOne(byJid, ConversationState.builder()
+							.jid(jid)
+							.currentState(stateData.getCurrentState())
+							.visit(stateData.getVisit())
+							.version(stateData.getVersion())
+							.updatedAt(now)
+							.build(), FindAndReplaceOptions.options().upsert());
+				}
+			});
+
+			return operations.execute()
+					.doOnSuccess(result -> {
+						// keep entries that changed again while the batch was in flight
+						batch.forEach(pending::remove);
+						log.debug("Flushed {} conversation states", batch.size());
+					})
+					.then()
+					.doFinally(signal -> flushing.set(false));
+		});
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		for (int i = 0; i < 100 && flushing.get(); i++) {
+			Thread.sleep(100);
+		}
+		log.info("Flushing {} pending conversation states before shutdown", pending.size());
+		flush().block(Duration.ofSeconds(10));
+	}
+
+	/**
+	 * A buffered change; the sequence tells a re-saved conversation apart from the one in flight.
+	 */
+	private record Pending(StateData stateData, long sequence) {
+	}
+}
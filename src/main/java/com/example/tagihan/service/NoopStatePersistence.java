@@ -0,0 +1,31 @@
+package com.example.tagihan.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps conversations in memory only ({@code state.persistence=none}).
+ */
+@Component
+@ConditionalOnProperty(name = "state.persistence", havingValue = "none")
+public class NoopStatePersistence implements StatePersistence {
+
+	@Override
+	public Mono<StateData> resolve(String jid, StateData local) {
+		return Mono.justOrEmpty(local);
+	}
+
+	@Override
+	public void saved(String jid, StateData stateData) {
+	}
+
+	@Override
+	public void removed(String jid) {
+	}
+
+	@Override
+	public Mono<Void> flush() {
+		return Mono.empty();
+	}
+}
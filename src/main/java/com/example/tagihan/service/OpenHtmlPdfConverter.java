@@ -0,0 +1,43 @@
+package com.example.tagihan.service;
+
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Handles HTML to PDF conversion in the JVM with openhtmltopdf, without a browser process.
+ * Supports CSS 2.1 plus paged media ({@code @page}, page breaks), which is what the report
+ * templates use. The HTML is parsed leniently with jsoup first, since openhtmltopdf itself
+ * only accepts well-formed XHTML.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pdf.engine", havingValue = "openhtmltopdf")
+public class OpenHtmlPdfConverter implements PdfConverter {
+
+    @Override
+    public byte[] convert(String htmlContent) {
+        try {
+            long start = System.currentTimeMillis();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            PdfRendererBuilder builder = new PdfRendererBuilder();
+            builder.useFastMode();
+            builder.withW3cDocument(new W3CDom().fromJsoup(Jsoup.parse(htmlContent)), "/");
+            builder.toStream(out);
+            builder.run();
+
+            log.info("PDF converted successfully using openhtmltopdf in {} ms", System.currentTimeMillis() - start);
+
+            return out.toByteArray();
+        } catch (Exception e) {
+            log.error("Error converting HTML to PDF with openhtmltopdf", e);
+            throw new RuntimeException("Failed to convert HTML to PDF", e);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.dto.OutboxView;
+import com.example.tagihan.dto.SendPriority;
+import com.example.tagihan.dto.WhatsAppMessageType;
+import com.example.tagihan.dto.WhatsAppRequestDTO;
+import com.example.tagihan.entity.OutboxMessage;
+import com.example.tagihan.entity.OutboxStatus;
+import com.example.tagihan.repository.OutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable delivery of outgoing WhatsApp messages.
+ * Callers write the message to the {@code outbox} collection and return; the drainer claims
+ * due messages in batches and sends several at once. A send counts only when the gateway
+ * answers with code 200; anything else is retried with jittered exponential backoff and
+ * dead-lettered after {@code outbox.max-attempts}. Delivery is at-least-once: a message whose
+ * sender died after the gateway accepted it is sent again once its lease expires.
+ */
+@Slf4j
+@Service
+public class OutboxService {
+
+    private final OutboxRepository outboxRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final WhatsappService whatsappService;
+    private final DocumentSpool documentSpool;
+
+    private final int batchSize;
+    private final int concurrency;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final Duration backoffBase;
+    private final Duration backoffMax;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+    private final AtomicLong pendingDepth = new AtomicLong();
+    private final AtomicLong deadDepth = new AtomicLong();
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter deadLettered;
+
+    public OutboxService(OutboxRepository outboxRepository,
+                         ReactiveMongoTemplate mongoTemplate,
+                         WhatsappService whatsappService,
+                         DocumentSpool documentSpool,
+                         MeterRegistry meterRegistry,
+                         @Value("${outbox.batch-size:20}") int batchSize,
+                         @Value("${outbox.concurrency:4}") int concurrency,
+                         @Value("${outbox.max-attempts:6}") int maxAttempts,
+                         @Value("${outbox.lease-seconds:120}") long leaseSeconds,
+                         @Value("${outbox.backoff-base-seconds:5}") long backoffBaseSeconds,
+                         @Value("${outbox.backoff-max-seconds:900}") long backoffMaxSeconds) {
+        this.outboxRepository = outboxRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.whatsappService = whatsappService;
+        this.documentSpool = documentSpool;
+        this.batchSize = Math.max(1, batchSize);
+        this.concurrency = Math.max(1, concurrency);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.backoffBase = Duration.ofSeconds(Math.max(1, backoffBaseSeconds));
+        this.backoffMax = Duration.ofSeconds(Math.max(backoffBaseSeconds, backoffMaxSeconds));
+
+        Gauge.builder("outbox.pending", pendingDepth, AtomicLong::get)
+                .description("PENDING outbox messages as of the last poll")
+                .register(meterRegistry);
+        Gauge.builder("outbox.dead", deadDepth, AtomicLong::get)
+                .description("DEAD outbox messages as of the last poll")
+                .register(meterRegistry);
+        this.sent = meterRegistry.counter("outbox.sent");
+        this.retried = meterRegistry.counter("outbox.retried");
+        this.deadLettered = meterRegistry.counter("outbox.dead_lettered");
+    }
+
+    public Mono<OutboxMessage> enqueueText(String idempotencyKey, String phone, String text, SendPriority priority) {
+        return enqueue(OutboxMessage.builder()
+                .idempotencyKey(idempotencyKey)
+                .type(WhatsAppMessageType.TEXT)
+                .priority(priority)
+                .phone(phone)
+                .message(text)
+                .build());
+    }
+
+    /**
+     * Spools {@code document} to GridFS and queues it; the caller can drop the array once the
+     * returned Mono completes.
+     */
+    public Mono<OutboxMessage> enqueueDocument(String idempotencyKey, String phone, String caption,
+                                               String documentName, byte[] document) {
+        return documentSpool.write(documentName, document)
+                .flatMap(documentId -> enqueue(OutboxMessage.builder()
+                                .idempotencyKey(idempotencyKey)
+                                .type(WhatsAppMessageType.DOCUMENT)
+                                .priority(SendPriority.INTERACTIVE)
+                                .phone(phone)
+                                .caption(caption)
+                                .documentName(documentName)
+                                .documentId(documentId)
+                                .build())
+                        .flatMap(stored -> documentId.equals(stored.getDocumentId())
+                                ? Mono.just(stored)
+                                : documentSpool.delete(documentId).thenReturn(stored))
+                        .onErrorResume(error -> documentSpool.delete(documentId).then(Mono.error(error))));
+    }
+
+    /**
+     * Stores the message and wakes the drainer.
+     *
+     * @return the stored message, or the one stored earlier under the same idempotency key
+     */
+    public Mono<OutboxMessage> enqueue(OutboxMessage message) {
+        Instant now = Instant.now();
+        message.setStatus(OutboxStatus.PENDING);
+        message.setAttempts(0);
+        message.setCreatedAt(now);
+        message.setNextAttemptAt(now);
+
+        return outboxRepository.insert(message)
+                .doOnNext(saved -> {
+                    log.info("Outbox {} antri untuk {}", saved.getIdempotencyKey(), saved.getPhone());
+                    drain();
+                })
+                .onErrorResume(DuplicateKeyException.class, e -> {
+                    log.info("Outbox {} sudah ada, tidak diantrikan ulang", message.getIdempotencyKey());
+                    return outboxRepository.findByIdempotencyKey(message.getIdempotencyKey());
+                });
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:5000}")
+    public void poll() {
+        drain();
+        refreshDepth().subscribe(null, error -> log.error("Outbox depth refresh failed: {}", error.getMessage()));
+    }
+
+    /**
+     * Sends due messages batch after batch until none are left. A call while a drain is running
+     * makes that drain go around once more instead of starting a second one.
+     */
+    public void drain() {
+        if (!draining.compareAndSet(false, true)) {
+            drainRequested.set(true);
+            return;
+        }
+        drainRequested.set(false);
+
+        Mono.defer(() -> claimBatch()
+                        .flatMap(this::deliver, concurrency)
+                        .count())
+                .repeat()
+                .takeWhile(claimed -> claimed > 0)
+                .reduce(0L, Long::sum)
+                .doFinally(signal -> {
+                    draining.set(false);
+                    if (drainRequested.get()) {
+                        drain();
+                    }
+                })
+                .subscribe(
+                        total -> {
+                            if (total > 0) {
+                                log.info("Outbox drain selesai, {} pesan diproses", total);
+                            }
+                        },
+                        error -> log.error("Outbox drain failed: {}", error.getMessage())
+                );
+    }
+
+    public Mono<Map<OutboxStatus, Long>> countByStatus() {
+        return Flux.fromArray(OutboxStatus.values())
+                .concatMap(status -> outboxRepository.countByStatus(status)
+                        .map(count -> Map.entry(status, count)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue, () -> new EnumMap<>(OutboxStatus.class));
+    }
+
+    public Mono<OutboxView> findByIdempotencyKey(String idempotencyKey) {
+        return outboxRepository.findViewByIdempotencyKey(idempotencyKey);
+    }
+
+    public Flux<OutboxView> findDead(int limit) {
+        return outboxRepository.findByStatusOrderByCreatedAtDesc(OutboxStatus.DEAD, PageRequest.of(0, Math.max(1, limit)));
+    }
+
+    /**
+     * Puts a dead-lettered message back in the queue with a fresh attempt budget.
+     *
+     * @return {@code false} if there is no DEAD message with that key
+     */
+    public Mono<Boolean> retry(String idempotencyKey) {
+        Query query = Query.query(Criteria.where("idempotencyKey").is(idempotencyKey)
+                .and("status").is(OutboxStatus.DEAD));
+        Update update = new Update()
+                .set("status", OutboxStatus.PENDING)
+                .set("attempts", 0)
+                .set("nextAttemptAt", Instant.now());
+        return mongoTemplate.updateFirst(query, update, OutboxMessage.class)
+                .map(result -> result.getModifiedCount() > 0)
+                .doOnNext(requeued -> {
+                    if (requeued) {
+                        log.info("Outbox {} diantrikan ulang oleh operator", idempotencyKey);
+                        drain();
+                    }
+                });
+    }
+
+    private Flux<OutboxMessage> claimBatch() {
+        Query due = Query.query(claimableCriteria(Instant.now()))
+                .with(Sort.by(Sort.Direction.ASC, "nextAttemptAt"))
+                .limit(batchSize);
+        due.fields().include("_id");
+
+        return mongoTemplate.find(due, OutboxMessage.class)
+                .concatMap(message -> claim(message.getId()));
+    }
+
+    private Mono<OutboxMessage> claim(String id) {
+        Instant now = Instant.now();
+        Query query = Query.query(new Criteria().andOperator(
+                Criteria.where("_id").is(id),
+                claimableCriteria(now)));
+        Update update = new Update()
+                .set("status", OutboxStatus.SENDING)
+                .set("lockedUntil", now.plus(lease))
+                .inc("attempts", 1);
+
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), OutboxMessage.class);
+    }
+
+    private Criteria claimableCriteria(Instant now) {
+        return new Criteria().orOperator(
+                Criteria.where("status").is(OutboxStatus.PENDING).and("nextAttemptAt").lte(now),
+                Criteria.where("status").is(OutboxStatus.SENDING).and("lockedUntil").lt(now));
+    }
+
+    private Mono<Void> deliver(OutboxMessage message) {
+        return whatsappService.sendMessage(toRequest(message))
+                .flatMap(response -> "200".equals(response.getCode())
+                        ? markSent(message)
+                        : markFailed(message, response.getCode() + " " + response.getMessage()))
+                .switchIfEmpty(Mono.defer(() -> markFailed(message, "Tipe pesan " + message.getType() + " tidak didukung")))
+                .onErrorResume(error -> markFailed(message, String.valueOf(error.getMessage())));
+    }
+
+    private WhatsAppRequestDTO toRequest(OutboxMessage message) {
+        WhatsAppRequestDTO.WhatsAppRequestDTOBuilder request = WhatsAppRequestDTO.builder()
+                .phone(message.getPhone())
+                .message(message.getMessage())
+                .caption(message.getCaption())
+                .isForwarded(false)
+                .type(message.getType())
+                .priority(message.getPriority());
+
+        if (message.getDocumentId() != null) {
+            // streamed from GridFS chunks when the multipart body is written
+            request.content(documentSpool.read(message.getDocumentId()))
+                    .fileName(message.getDocumentName());
+        }
+        return request.build();
+    }
+
+    private Mono<Void> markSent(OutboxMessage message) {
+        Update update = new Update()
+                .set("status", OutboxStatus.SENT)
+                .set("sentAt", Instant.now())
+                .unset("lockedUntil")
+                .unset("documentId");
+        return mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(message.getId())), update, OutboxMessage.class)
+                .doOnSuccess(result -> {
+                    sent.increment();
+                    log.info("Outbox {} terkirim ke {}", message.getIdempotencyKey(), message.getPhone());
+                })
+                .then(documentSpool.delete(message.getDocumentId()));
+    }
+
+    private Mono<Void> markFailed(OutboxMessage message, String error) {
+        Update update = new Update()
+                .set("lastError", error)
+                .unset("lockedUntil");
+
+        if (message.getAttempts() >= maxAttempts) {
+            log.error("Outbox {} gagal {} kali, dipindah ke dead letter: {}",
+                    message.getIdempotencyKey(), message.getAttempts(), error);
+            update.set("status", OutboxStatus.DEAD);
+            deadLettered.increment();
+        } else {
+            Duration backoff = backoff(message.getAttempts());
+            log.warn("Outbox {} gagal (percobaan {}), dicoba lagi dalam {}s: {}",
+                    message.getIdempotencyKey(), message.getAttempts(), backoff.toSeconds(), error);
+            update.set("status", OutboxStatus.PENDING)
+                    .set("nextAttemptAt", Instant.now().plus(backoff));
+            retried.increment();
+        }
+
+        return mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(message.getId())), update, OutboxMessage.class)
+                .then();
+    }
+
+    /**
+     * Exponential backoff with equal jitter, so messages that failed together (gateway down)
+     * do not all come due in the same instant.
+     */
+    private Duration backoff(int attempts) {
+        long ceiling = Math.min(backoffMax.toMillis(), backoffBase.toMillis() << Math.min(20, Math.max(0, attempts - 1)));
+        long half = ceiling / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(half + 1));
+    }
+
+    private Mono<Void> refreshDepth() {
+        return outboxRepository.countByStatus(OutboxStatus.PENDING)
+                .doOnNext(pendingDepth::set)
+                .then(outboxRepository.countByStatus(OutboxStatus.DEAD))
+                .doOnNext(deadDepth::set)
+                .then();
+    }
+}
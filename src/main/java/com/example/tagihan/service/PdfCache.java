@@ -0,0 +1,228 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.entity.Visit;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Rendered report PDFs on disk, keyed by a fingerprint of everything that goes into the
+ * render: template name and content, petugas name, and the id and version of every visit in
+ * order. The same request with the same visits is served from disk without Thymeleaf or
+ * Chromium. Bounded by total file size; a saved visit drops the PDFs that contain its SPK or
+ * its visit date. Files left by a previous run are removed at startup.
+ */
+@Slf4j
+@Component
+public class PdfCache {
+
+    private static final ZoneId JAKARTA_ZONE = ZoneId.of("Asia/Jakarta");
+
+    private final Path directory;
+    private final ResourceLoader resourceLoader;
+    private final String templatePrefix;
+    private final String templateSuffix;
+    private final Cache<String, Entry> entries;
+    private final Map<String, Set<String>> keysByTag = new ConcurrentHashMap<>();
+    private final Map<String, String> templateVersions = new ConcurrentHashMap<>();
+
+    public PdfCache(MeterRegistry meterRegistry,
+                    ResourceLoader resourceLoader,
+                    @Value("${pdf.cache.dir:pdf-cache}") String directory,
+                    @Value("${pdf.cache.max-bytes:268435456}") long maxBytes,
+                    @Value("${spring.thymeleaf.prefix:classpath:/templates/}") String templatePrefix,
+                    @Value("${spring.thymeleaf.suffix:.html}") String templateSuffix) throws IOException {
+        this.directory = Files.createDirectories(Path.of(directory)).toAbsolutePath();
+        this.resourceLoader = resourceLoader;
+        this.templatePrefix = templatePrefix;
+        this.templateSuffix = templateSuffix;
+        clearDirectory();
+
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, Entry entry) -> entry.size())
+                .removalListener((String key, Entry entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        removed(key, entry, cause);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "pdf");
+        log.info("PDF cache aktif di {}: maks {} byte", this.directory, maxBytes);
+    }
+
+    public String fingerprint(String templateName, String petugasName, List<Visit> visits) {
+        MessageDigest digest = sha256();
+        update(digest, templateName);
+        update(digest, templateVersion(templateName));
+        update(digest, petugasName);
+        for (Visit visit : visits) {
+            update(digest, visit.getId());
+            update(digest, String.valueOf(visit.getVersion()));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public Mono<byte[]> get(String key) {
+        Entry entry = entries.getIfPresent(key);
+        if (entry == null) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> Files.readAllBytes(entry.path()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(NoSuchFileException.class, e -> {
+                    entries.invalidate(key);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Stores a rendered PDF. Failing to cache never fails the report.
+     */
+    public Mono<Void> put(String key, byte[] pdf, List<Visit> visits) {
+        return Mono.fromRunnable(() -> {
+                    Path file = directory.resolve(key + "-" + UUID.randomUUID() + ".pdf");
+                    Path temp = directory.resolve(file.getFileName() + ".tmp");
+                    try {
+                        Files.write(temp, pdf);
+                        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (IOException e) {
+                        deleteQuietly(temp);
+                        throw new IllegalStateException(e);
+                    }
+                    Entry entry = new Entry(file, pdf.length, tagsOf(visits));
+                    entry.tags().forEach(tag -> keysByTag.computeIfAbsent(tag, t -> ConcurrentHashMap.newKeySet()).add(key));
+                    entries.put(key, entry);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then()
+                .onErrorResume(error -> {
+                    log.warn("PDF gagal disimpan ke cache: {}", error.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Drops every cached PDF that contains the SPK or the visit date of {@code visit}.
+     */
+    public void invalidate(Visit visit) {
+        int dropped = 0;
+        for (String tag : tagsOf(List.of(visit))) {
+            Set<String> keys = keysByTag.remove(tag);
+            if (keys != null) {
+                entries.invalidateAll(keys);
+                dropped += keys.size();
+            }
+        }
+        if (dropped > 0) {
+            log.info("{} PDF cache di-invalidate karena kunjungan SPK {}", dropped, visit.getSpk());
+        }
+    }
+
+    private Set<String> tagsOf(List<Visit> visits) {
+        Set<String> tags = new HashSet<>();
+        for (Visit visit : visits) {
+            if (visit.getSpk() != null) {
+                tags.add("spk:" + visit.getSpk());
+            }
+            if (visit.getVisitDate() != null) {
+                tags.add("date:" + LocalDate.ofInstant(visit.getVisitDate(), JAKARTA_ZONE));
+            }
+        }
+        return tags;
+    }
+
+    private void removed(String key, Entry entry, RemovalCause cause) {
+        untag(key, entry, cause == RemovalCause.REPLACED ? entries.asMap().get(key) : null);
+        deleteQuietly(entry.path());
+    }
+
+    /**
+     * Drops {@code key} from the tags of a removed entry, keeping the tags its replacement
+     * {@code current} still carries so that entry stays invalidatable.
+     */
+    private void untag(String key, Entry entry, Entry current) {
+        entry.tags().stream()
+                .filter(tag -> current == null || !current.tags().contains(tag))
+                .forEach(tag -> keysByTag.computeIfPresent(tag, (t, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                }));
+    }
+
+    /**
+     * Hash of the template source, so an edited template never serves PDFs rendered from the
+     * old one.
+     */
+    private String templateVersion(String templateName) {
+        return templateVersions.computeIfAbsent(templateName, name -> {
+            Resource template = resourceLoader.getResource(templatePrefix + name + templateSuffix);
+            try (InputStream in = template.getInputStream()) {
+                return HexFormat.of().formatHex(sha256().digest(in.readAllBytes()));
+            } catch (IOException e) {
+                log.warn("Template {} tidak terbaca untuk versi cache: {}", name, e.getMessage());
+                return "unknown";
+            }
+        });
+    }
+
+    private void clearDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(Files::isRegularFile).forEach(PdfCache::deleteQuietly);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Gagal menghapus {}: {}", file, e.getMessage());
+        }
+    }
+
+    private record Entry(Path path, int size, Set<String> tags) {
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.tagihan.service;
+
+/**
+ * Turns a rendered report template into a PDF. The engine is chosen with {@code pdf.engine}:
+ * {@code chromium} (default) or {@code openhtmltopdf}.
+ */
+public interface PdfConverter {
+
+    byte[] convert(String htmlContent);
+}
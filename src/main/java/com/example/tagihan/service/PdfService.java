@@ -1,8 +1,15 @@
 package com.example.tagihan.service;
 
+import com.example.tagihan.config.PdfSettings;
 import com.example.tagihan.entity.Visit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.spring6.SpringTemplateEngine;
@@ -10,6 +17,9 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -25,30 +35,62 @@ import java.util.stream.Collectors;
 public class PdfService {
 
 	private static final String TEMPLATE_RKH = "rkh";
+	private static final List<String> TEMPLATES = List.of("lkn", TEMPLATE_RKH);
 	private static final DateTimeFormatter DATE_FORMATTER =
 			DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm").withZone(ZoneId.of("Asia/Jakarta"));
 
 	private final SpringTemplateEngine templateEngine;
-	private final PlaywrightPdfConverter pdfConverter;
+	private final PdfConverter pdfConverter;
+	private final PdfCache pdfCache;
+	private final PdfSettings pdfSettings;
+
+	/**
+	 * Render a multi-AO RKH one AO at a time in parallel and merge the PDFs, instead of one
+	 * Chromium render for the whole branch.
+	 */
+	@Value("${pdf.rkh.sharded:true}")
+	private boolean shardedRkh;
 
 	public Mono<byte[]> generateLKNPdf(Flux<Visit> visitFlux, String petugasName, String templateName) {
 		return visitFlux
 				.collectList()
 				.doOnNext(visits -> log.debug("Collected {} visits for template: {}", visits.size(), templateName))
-				.flatMap(visits -> generatePdf(visits, petugasName, templateName));
+				.flatMap(visits -> visits.isEmpty()
+						? generatePdf(visits, petugasName, templateName)
+						: generateCachedPdf(visits, petugasName, templateName));
+	}
+
+	private Mono<byte[]> generateCachedPdf(List<Visit> visits, String petugasName, String templateName) {
+		String key = pdfCache.fingerprint(templateName, petugasName, visits);
+		return pdfCache.get(key)
+				.doOnNext(pdf -> log.info("PDF {} diambil dari cache ({} visits, {} KB)",
+						templateName, visits.size(), pdf.length / 1024))
+				.switchIfEmpty(Mono.defer(() -> generatePdf(visits, petugasName, templateName)
+						.flatMap(pdf -> pdfCache.put(key, pdf, visits).thenReturn(pdf))));
 	}
 
 	private Mono<byte[]> generatePdf(List<Visit> visits, String petugasName, String templateName) {
+		if (shardedRkh && TEMPLATE_RKH.equals(templateName) && visits != null && !visits.isEmpty()) {
+			Map<String, List<Visit>> groupedVisits = groupVisitsByUserId(visits);
+			if (groupedVisits.size() > 1) {
+				return generateShardedRkh(groupedVisits, petugasName);
+			}
+		}
+
 		return Mono.fromCallable(() -> {
 					validateVisits(visits);
 
 					Context context = buildContext(visits, petugasName, templateName);
 
-					logContextDebug(context, visits.size(), templateName);
+					if (log.isDebugEnabled()) {
+						logContextDebug(context, visits.size(), templateName);
+					}
 
 					String htmlContent = renderTemplate(templateName, context);
 
-					logHtmlDebug(htmlContent);
+					if (log.isDebugEnabled()) {
+						logHtmlDebug(htmlContent);
+					}
 
 					return pdfConverter.convert(htmlContent);
 				})
@@ -57,6 +99,77 @@ public class PdfService {
 				.doOnError(this::logError);
 	}
 
+	/**
+	 * Renders every AO's pages on its own, as many at once as there are pooled browsers, and
+	 * concatenates the PDFs in AO order.
+	 */
+	private Mono<byte[]> generateShardedRkh(Map<String, List<Visit>> groupedVisits, String petugasName) {
+		long start = System.nanoTime();
+		int concurrency = Math.max(1, pdfSettings.getPoolSize());
+
+		return Flux.fromIterable(groupedVisits.entrySet())
+				.flatMapSequential(group -> Mono.fromCallable(() -> renderShard(group.getKey(), group.getValue(), petugasName))
+						.subscribeOn(Schedulers.boundedElastic()), concurrency)
+				.collectList()
+				.map(shards -> {
+					long mergeStart = System.nanoTime();
+					byte[] merged = mergeShards(shards);
+					Shard slowest = shards.stream().max(Comparator.comparingLong(Shard::millis)).orElseThrow();
+					log.info("RKH sharded: {} AO, shard terlama {} ({} ms), merge {} ms, total {} ms",
+							shards.size(), slowest.userId(), slowest.millis(),
+							toMillis(System.nanoTime() - mergeStart), toMillis(System.nanoTime() - start));
+					return merged;
+				})
+				.doOnSuccess(this::logSuccess)
+				.doOnError(this::logError);
+	}
+
+	private Shard renderShard(String userId, List<Visit> visits, String petugasName) {
+		long start = System.nanoTime();
+		Map<String, List<Visit>> single = new LinkedHashMap<>();
+		single.put(userId, visits);
+
+		Context context = new Context();
+		context.setVariable("visitsByAo", single);
+		context.setVariable("petugasName", petugasName);
+
+		String htmlContent = renderTemplate(TEMPLATE_RKH, context);
+		long rendered = System.nanoTime();
+		byte[] pdf = pdfConverter.convert(htmlContent);
+		long converted = System.nanoTime();
+
+		log.info("Shard RKH {}: {} visits, template {} ms, pdf {} ms",
+				userId, visits.size(), toMillis(rendered - start), toMillis(converted - rendered));
+		return new Shard(userId, pdf, toMillis(converted - start));
+	}
+
+	private byte[] mergeShards(List<Shard> shards) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(shards.stream().mapToInt(shard -> shard.pdf().length).sum());
+			PDFMergerUtility merger = new PDFMergerUtility();
+			merger.setDestinationStream(out);
+			for (Shard shard : shards) {
+				merger.addSource(new RandomAccessReadBuffer(shard.pdf()));
+			}
+			merger.mergeDocuments(IOUtils.createMemoryOnlyStreamCache());
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to merge RKH pages", e);
+		}
+	}
+
+	private static long toMillis(long nanos) {
+		return nanos / 1_000_000;
+	}
+
+	/**
+	 * Renders the whole report to HTML without converting it, for comparing PDF engines.
+	 */
+	public String renderHtml(List<Visit> visits, String petugasName, String templateName) {
+		validateVisits(visits);
+		return renderTemplate(templateName, buildContext(visits, petugasName, templateName));
+	}
+
 	private void validateVisits(List<Visit> visits) {
 		if (visits == null || visits.isEmpty()) {
 			throw new IllegalArgumentException("Tidak ada data kunjungan");
@@ -73,11 +186,6 @@ public class PdfService {
 
 			log.debug("RKH template: grouped {} visits into {} userId groups (pages)",
 					visits.size(), groupedVisits.size());
-
-
-			groupedVisits.forEach((userId, userVisits) ->
-					log.debug("  - userId '{}': {} visits", userId, userVisits.size())
-			);
 		} else {
 			context.setVariable("visits", visits);
 		}
@@ -109,7 +217,7 @@ public class PdfService {
 		try {
 			String html = templateEngine.process(templateName, context);
 
-			if (html == null || html.trim().isEmpty()) {
+			if (html == null || html.isBlank()) {
 				log.error("Template rendered empty HTML!");
 				throw new RuntimeException("Template produced empty content");
 			}
@@ -121,6 +229,24 @@ public class PdfService {
 		}
 	}
 
+	/**
+	 * Parses the report templates into the template cache before the first request.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUpTemplates() {
+		Mono.fromRunnable(() -> TEMPLATES.forEach(templateName -> {
+					long start = System.nanoTime();
+					try {
+						templateEngine.process(templateName, new Context(), Writer.nullWriter());
+						log.info("Template {} siap dalam {} ms", templateName, (System.nanoTime() - start) / 1_000_000);
+					} catch (Exception e) {
+						log.warn("Warm-up template {} gagal: {}", templateName, e.getMessage());
+					}
+				}))
+				.subscribeOn(Schedulers.boundedElastic())
+				.subscribe();
+	}
+
 	private void logContextDebug(Context context, int visitCount, String templateName) {
 		log.debug("=== CONTEXT DEBUG ===");
 		log.debug("Template: {}", templateName);
@@ -190,7 +316,11 @@ public class PdfService {
 	}
 
 	private long countOccurrences(String text, String substring) {
-		return (text.length() - text.replace(substring, "").length()) / substring.length();
+		long count = 0;
+		for (int index = text.indexOf(substring); index >= 0; index = text.indexOf(substring, index + substring.length())) {
+			count++;
+		}
+		return count;
 	}
 
 	private String formatInstant(Instant instant) {
@@ -214,4 +344,7 @@ public class PdfService {
 	private void logError(Throwable error) {
 		log.error("Error generating PDF", error);
 	}
+
+	private record Shard(String userId, byte[] pdf, long millis) {
+	}
 }
\ No newline at end of file
@@ -1,8 +1,11 @@
 package com.example.tagihan.service;
 
+import com.example.tagihan.config.PdfSettings;
 import com.microsoft.playwright.*;
 import com.microsoft.playwright.options.Margin;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 /**
@@ -10,19 +13,23 @@ import org.springframework.stereotype.Component;
  */
 @Slf4j
 @Component
-public class PlaywrightPdfConverter {
+@ConditionalOnProperty(name = "pdf.engine", havingValue = "chromium", matchIfMissing = true)
+@RequiredArgsConstructor
+public class PlaywrightPdfConverter implements PdfConverter {
 
-    private static final String PDF_FORMAT = "A4";
-    private static final String MARGIN_SIZE = "10mm";
+    private final BrowserPool browserPool;
+    private final PdfSettings pdfSettings;
 
+    @Override
     public byte[] convert(String htmlContent) {
-        try (Playwright playwright = Playwright.create()) {
-            Browser browser = launchBrowser(playwright);
-            Page page = createPage(browser, htmlContent);
-            byte[] pdf = generatePdf(page);
+        try {
+            long start = System.currentTimeMillis();
+            byte[] pdf = browserPool.withPage(page -> {
+                page.setContent(htmlContent);
+                return generatePdf(page);
+            });
 
-            browser.close();
-            log.info("PDF converted successfully using Playwright");
+            log.info("PDF converted successfully using Playwright in {} ms", System.currentTimeMillis() - start);
 
             return pdf;
         } catch (Exception e) {
@@ -31,30 +38,19 @@ public class PlaywrightPdfConverter {
         }
     }
 
-    private Browser launchBrowser(Playwright playwright) {
-        return playwright.chromium().launch(
-                new BrowserType.LaunchOptions().setHeadless(true)
-        );
-    }
-
-    private Page createPage(Browser browser, String htmlContent) {
-        Page page = browser.newPage();
-        page.setContent(htmlContent);
-        return page;
-    }
-
     private byte[] generatePdf(Page page) {
         return page.pdf(new Page.PdfOptions()
-                .setFormat(PDF_FORMAT)
+                .setFormat(pdfSettings.getFormat())
                 .setMargin(createMargin())
-                .setPrintBackground(true));
+                .setPrintBackground(pdfSettings.isPrintBackground()));
     }
 
     private Margin createMargin() {
+        String marginSize = pdfSettings.getMarginSize();
         return new Margin()
-                .setTop(MARGIN_SIZE)
-                .setRight(MARGIN_SIZE)
-                .setBottom(MARGIN_SIZE)
-                .setLeft(MARGIN_SIZE);
+                .setTop(marginSize)
+                .setRight(marginSize)
+                .setBottom(marginSize)
+                .setLeft(marginSize);
     }
-}
\ No newline at end of file
+}
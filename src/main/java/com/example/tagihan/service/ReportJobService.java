@@ -0,0 +1,291 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.dto.ReportJobStatus;
+import com.example.tagihan.dto.ReportJobType;
+import com.example.tagihan.dto.ReportJobView;
+import com.example.tagihan.exception.ReportQueueFullException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs report generation (query, render, send) off the webhook pipeline.
+ * Jobs wait in a bounded buffer and run on a fixed number of workers, so heavy reports
+ * queue behind each other instead of taking dispatcher slots from conversations. A job
+ * identical to one still queued or running (same type, filters and requester) is not
+ * submitted again. Finished jobs stay queryable for {@code reports.retention-minutes}.
+ * <p>
+ * Jobs are kept in memory only; durability comes from the inbound message that asked for the
+ * report, which {@code InboundQueueService} completes only once {@link #completion} does. A
+ * restart therefore re-dispatches the request and the job is submitted again.
+ */
+@Slf4j
+@Service
+public class ReportJobService {
+
+    private final int workers;
+    private final Duration jobTimeout;
+    private final BlockingQueue<ReportJob> buffer;
+    private final Sinks.Many<ReportJob> sink;
+    private final Map<String, ReportJob> active = new ConcurrentHashMap<>();
+    private final Cache<String, ReportJob> jobs;
+    private final Cache<String, ReportJob> jobsByRequest;
+    private final AtomicInteger running = new AtomicInteger();
+    private final Counter deduplicated;
+    private final Timer queueWait;
+    private final Timer runTime;
+    private Disposable workerSubscription;
+
+    public ReportJobService(MeterRegistry meterRegistry,
+                            @Value("${reports.workers:2}") int workers,
+                            @Value("${reports.capacity:50}") int capacity,
+                            @Value("${reports.job-timeout-seconds:300}") long jobTimeoutSeconds,
+                            @Value("${reports.retention-minutes:60}") long retentionMinutes) {
+        this.workers = Math.max(1, workers);
+        this.jobTimeout = Duration.ofSeconds(jobTimeoutSeconds);
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(buffer);
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(retentionMinutes))
+                .build();
+        this.jobsByRequest = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(retentionMinutes))
+                .build();
+
+        Gauge.builder("reports.jobs.queued", buffer, BlockingQueue::size)
+                .description("Report jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("reports.jobs.running", running, AtomicInteger::get)
+                .description("Report jobs being generated")
+                .register(meterRegistry);
+        this.deduplicated = meterRegistry.counter("reports.jobs.deduplicated");
+        this.queueWait = Timer.builder("reports.jobs.queue_wait").register(meterRegistry);
+        this.runTime = Timer.builder("reports.jobs.run_time").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        workerSubscription = sink.asFlux()
+                .flatMap(this::run, workers)
+                .subscribe();
+        log.info("Report jobs started with {} workers, buffer {}", workers, buffer.remainingCapacity());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (workerSubscription != null) {
+            workerSubscription.dispose();
+        }
+    }
+
+    /**
+     * Queues {@code work} as a job, or returns the identical job already queued or running.
+     * Fails with {@link ReportQueueFullException} when the queue is full.
+     *
+     * @param requestId the inbound message asking for the report, see {@link #completion}
+     */
+    public Mono<Submission> submit(ReportJobType type, String filters, String requester, String requestId,
+                                   Supplier<Mono<Void>> work) {
+        return Mono.fromCallable(() -> {
+            String key = type + "|" + filters + "|" + requester;
+            ReportJob job = new ReportJob(UUID.randomUUID().toString(), key, type, filters, requester, work);
+
+            ReportJob existing = active.putIfAbsent(key, job);
+            if (existing != null) {
+                deduplicated.increment();
+                track(requestId, existing);
+                log.info("Report job {} {} for {} already {}, not submitted again",
+                        type, filters, requester, existing.view().status());
+                return new Submission(existing.view(), true);
+            }
+
+            jobs.put(job.id, job);
+            Sinks.EmitResult result;
+            do {
+                result = sink.tryEmitNext(job);
+            } while (result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+
+            if (result.isFailure()) {
+                active.remove(key, job);
+                job.finish(ReportJobStatus.FAILED, "Antrian laporan penuh");
+                throw new ReportQueueFullException("Antrian laporan penuh, coba lagi nanti");
+            }
+            track(requestId, job);
+            log.info("Report job {} queued: {} {} for {}", job.id, type, filters, requester);
+            return new Submission(job.view(), false);
+        });
+    }
+
+    /**
+     * Completes once the job submitted for {@code requestId} has finished, whatever its outcome;
+     * completes right away when the request submitted no job.
+     */
+    public Mono<Void> completion(String requestId) {
+        ReportJob job = requestId == null ? null : jobsByRequest.getIfPresent(requestId);
+        return job == null ? Mono.empty() : job.done.asMono();
+    }
+
+    private void track(String requestId, ReportJob job) {
+        if (requestId != null) {
+            jobsByRequest.put(requestId, job);
+        }
+    }
+
+    public Mono<ReportJobView> find(String id) {
+        return Mono.justOrEmpty(jobs.getIfPresent(id)).map(ReportJob::view);
+    }
+
+    public Flux<ReportJobView> recent() {
+        return Flux.fromStream(jobs.asMap().values().stream()
+                .map(ReportJob::view)
+                .sorted(Comparator.comparing(ReportJobView::submittedAt).reversed()));
+    }
+
+    /**
+     * Cancels a queued job, or stops a running one at its next step (a render that already
+     * started in Chromium finishes, but its PDF is not sent).
+     *
+     * @return {@code false} if the job is unknown or already finished
+     */
+    public Mono<Boolean> cancel(String id) {
+        return Mono.fromCallable(() -> {
+            ReportJob job = jobs.getIfPresent(id);
+            if (job == null || !job.cancel()) {
+                return false;
+            }
+            active.remove(job.key, job);
+            log.info("Report job {} cancelled", id);
+            return true;
+        });
+    }
+
+    private Mono<Void> run(ReportJob job) {
+        if (!job.start()) {
+            return Mono.empty();
+        }
+        running.incrementAndGet();
+        queueWait.record(Duration.between(job.submittedAt, job.startedAt));
+
+        return Mono.defer(job.work)
+                .timeout(jobTimeout)
+                .takeUntilOther(job.cancelSignal.asMono())
+                .then(Mono.fromRunnable(() -> job.finish(ReportJobStatus.DONE, null)))
+                .onErrorResume(error -> {
+                    log.error("Report job {} failed: {}", job.id, error.getMessage());
+                    job.finish(ReportJobStatus.FAILED, String.valueOf(error.getMessage()));
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    running.decrementAndGet();
+                    active.remove(job.key, job);
+                    jobs.put(job.id, job);
+                    ReportJobView view = job.view();
+                    if (view.runMillis() != null) {
+                        runTime.record(Duration.ofMillis(view.runMillis()));
+                    }
+                    log.info("Report job {} {}: antre {} ms, proses {} ms",
+                            job.id, view.status(), view.queueMillis(), view.runMillis());
+                })
+                .then()
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public record Submission(ReportJobView job, boolean deduplicated) {
+    }
+
+    private static final class ReportJob {
+
+        private final String id;
+        private final String key;
+        private final ReportJobType type;
+        private final String filters;
+        private final String requester;
+        private final Supplier<Mono<Void>> work;
+        private final Instant submittedAt = Instant.now();
+        private final Sinks.Empty<Void> cancelSignal = Sinks.empty();
+        private final Sinks.Empty<Void> done = Sinks.empty();
+        private ReportJobStatus status = ReportJobStatus.QUEUED;
+        private Instant startedAt;
+        private Instant finishedAt;
+        private String error;
+
+        private ReportJob(String id, String key, ReportJobType type, String filters, String requester,
+                          Supplier<Mono<Void>> work) {
+            this.id = id;
+            this.key = key;
+            this.type = type;
+            this.filters = filters;
+            this.requester = requester;
+            this.work = work;
+        }
+
+        private synchronized boolean start() {
+            if (status != ReportJobStatus.QUEUED) {
+                return false;
+            }
+            status = ReportJobStatus.RUNNING;
+            startedAt = Instant.now();
+            return true;
+        }
+
+        private synchronized boolean cancel() {
+            if (status == ReportJobStatus.QUEUED) {
+                status = ReportJobStatus.CANCELLED;
+                finishedAt = Instant.now();
+                done.tryEmitEmpty();
+                return true;
+            }
+            if (status == ReportJobStatus.RUNNING) {
+                status = ReportJobStatus.CANCELLED;
+                cancelSignal.tryEmitEmpty();
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void finish(ReportJobStatus outcome, String failure) {
+            if (finishedAt != null) {
+                return;
+            }
+            if (status != ReportJobStatus.CANCELLED) {
+                status = outcome;
+                error = failure;
+            }
+            finishedAt = Instant.now();
+            done.tryEmitEmpty();
+        }
+
+        private synchronized ReportJobView view() {
+            Instant now = Instant.now();
+            Long queueMillis = Duration.between(submittedAt, startedAt != null ? startedAt : (finishedAt != null ? finishedAt : now)).toMillis();
+            Long runMillis = startedAt == null ? null
+                    : Duration.between(startedAt, finishedAt != null ? finishedAt : now).toMillis();
+            return new ReportJobView(id, type, filters, requester, status, submittedAt, startedAt, finishedAt,
+                    queueMillis, runMillis, error);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.dto.SendPriority;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Paces outbound calls to the WhatsApp gateway.
+ * A send is released when both the global token bucket and the bucket of its recipient hold a
+ * token; a send whose recipient is out of tokens waits aside so it does not hold up sends to
+ * other recipients. Queued sends go out by {@link SendPriority}, then in submission order.
+ * A 429 from the gateway pauses all sends for its {@code Retry-After} and puts the send back
+ * in the queue, up to {@code max-throttle-retries} times.
+ */
+@Slf4j
+@Component
+public class SendScheduler {
+
+    private static final Comparator<Task<?>> READY_ORDER = Comparator
+            .comparing((Task<?> task) -> task.priority)
+            .thenComparingLong(task -> task.sequence);
+
+    private final TokenBucket global;
+    private final Cache<String, TokenBucket> recipients;
+    private final double recipientPerSecond;
+    private final int recipientBurst;
+    private final int capacity;
+    private final int maxThrottleRetries;
+    private final Duration defaultRetryAfter;
+
+    private final Object lock = new Object();
+    private final PriorityQueue<Task<?>> ready = new PriorityQueue<>(READY_ORDER);
+    private final PriorityQueue<Task<?>> deferred = new PriorityQueue<>(Comparator.comparingLong((Task<?> task) -> task.notBefore));
+    private final AtomicLong sequence = new AtomicLong();
+    private long pausedUntil = System.nanoTime();
+    private volatile boolean running = true;
+    private final Thread drainer;
+
+    private final Timer queueWait;
+    private final Counter throttled;
+    private final Counter recipientDeferrals;
+
+    public SendScheduler(MeterRegistry meterRegistry,
+                         @Value("${whatsapp.rate.per-second:5}") double perSecond,
+                         @Value("${whatsapp.rate.burst:5}") int burst,
+                         @Value("${whatsapp.rate.recipient-per-minute:20}") double recipientPerMinute,
+                         @Value("${whatsapp.rate.recipient-burst:5}") int recipientBurst,
+                         @Value("${whatsapp.rate.max-throttle-retries:5}") int maxThrottleRetries,
+                         @Value("${whatsapp.rate.default-retry-after-seconds:5}") long defaultRetryAfterSeconds,
+                         @Value("${whatsapp.send.capacity:5000}") int capacity) {
+        this.global = new TokenBucket(perSecond, burst, System.nanoTime());
+        this.recipientPerSecond = recipientPerMinute / 60.0;
+        this.recipientBurst = recipientBurst;
+        this.recipients = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+        this.capacity = Math.max(1, capacity);
+        this.maxThrottleRetries = Math.max(0, maxThrottleRetries);
+        this.defaultRetryAfter = Duration.ofSeconds(defaultRetryAfterSeconds);
+
+        for (SendPriority priority : SendPriority.values()) {
+            Gauge.builder("whatsapp.send.queued", this, scheduler -> scheduler.queued(priority))
+                    .description("Sends waiting for a token")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("whatsapp.send.deferred", this, SendScheduler::deferredCount)
+                .description("Sends held back because their recipient is out of tokens")
+                .register(meterRegistry);
+        Gauge.builder("whatsapp.send.paused", this, scheduler -> scheduler.isPaused() ? 1 : 0)
+                .description("1 while the gateway's Retry-After is in effect")
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("whatsapp.send.queue_wait")
+                .description("Time a send waited in the scheduler before going out")
+                .register(meterRegistry);
+        this.throttled = meterRegistry.counter("whatsapp.send.throttled");
+        this.recipientDeferrals = meterRegistry.counter("whatsapp.send.recipient_deferrals");
+
+        this.drainer = Thread.ofPlatform().name("wa-send-scheduler").daemon().start(this::drain);
+        log.info("WhatsApp send scheduler aktif: {}/s (burst {}), {}/menit per penerima (burst {})",
+                perSecond, burst, recipientPerMinute, recipientBurst);
+    }
+
+    /**
+     * Queues {@code send} and runs it once a token for {@code recipient} is available. The send
+     * is queued when the returned Mono is subscribed, so a resubscription (retry) queues again.
+     */
+    public <T> Mono<T> schedule(String recipient, SendPriority priority, Supplier<Mono<T>> send) {
+        return Mono.defer(() -> {
+            Task<T> task = new Task<>(recipient, priority != null ? priority : SendPriority.INTERACTIVE,
+                    sequence.incrementAndGet(), send);
+            synchronized (lock) {
+                if (ready.size() + deferred.size() >= capacity) {
+                    return Mono.error(new IllegalStateException("Antrian kirim WhatsApp penuh, coba lagi nanti"));
+                }
+                ready.add(task);
+                lock.notifyAll();
+            }
+            return task.result.asMono()
+                    .doOnCancel(() -> task.cancelled = true);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        drainer.interrupt();
+        synchronized (lock) {
+            log.info("WhatsApp send scheduler berhenti, {} pengiriman dibatalkan", ready.size() + deferred.size());
+            ready.forEach(task -> task.result.tryEmitError(new IllegalStateException("Aplikasi sedang berhenti")));
+            deferred.forEach(task -> task.result.tryEmitError(new IllegalStateException("Aplikasi sedang berhenti")));
+            ready.clear();
+            deferred.clear();
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            try {
+                Task<?> task = next();
+                if (task != null) {
+                    queueWait.record(System.nanoTime() - task.enqueuedAt, TimeUnit.NANOSECONDS);
+                    task.run(this::onFailure);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("WhatsApp send scheduler error: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Blocks until a send may go out, taking its global and recipient tokens.
+     */
+    private Task<?> next() throws InterruptedException {
+        synchronized (lock) {
+            while (running) {
+                long now = System.nanoTime();
+                while (!deferred.isEmpty() && deferred.peek().notBefore - now <= 0) {
+                    ready.add(deferred.poll());
+                }
+
+                long waitNanos;
+                if (pausedUntil - now > 0) {
+                    waitNanos = pausedUntil - now;
+                } else if (ready.isEmpty()) {
+                    waitNanos = deferred.isEmpty() ? 0 : deferred.peek().notBefore - now;
+                } else if (ready.peek().cancelled) {
+                    ready.poll();
+                    continue;
+                } else {
+                    waitNanos = global.tryAcquire(now);
+                    if (waitNanos == 0) {
+                        Task<?> head = ready.poll();
+                        long recipientWait = recipients.get(head.recipient, key -> new TokenBucket(recipientPerSecond, recipientBurst, now))
+                                .tryAcquire(now);
+                        if (recipientWait == 0) {
+                            return head;
+                        }
+                        global.refund();
+                        head.notBefore = now + recipientWait;
+                        deferred.add(head);
+                        recipientDeferrals.increment();
+                        continue;
+                    }
+                }
+
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(lock, waitNanos);
+                } else {
+                    lock.wait();
+                }
+            }
+            return null;
+        }
+    }
+
+    private void onFailure(Task<?> task, Throwable error) {
+        Duration retryAfter = retryAfter(error);
+        if (retryAfter == null || task.throttleRetries >= maxThrottleRetries || !running) {
+            task.result.tryEmitError(error);
+            return;
+        }
+
+        throttled.increment();
+        task.throttleRetries++;
+        log.warn("Gateway WhatsApp membalas 429, semua pengiriman ditahan {} ms (percobaan ulang {} untuk {})",
+                retryAfter.toMillis(), task.throttleRetries, task.recipient);
+        synchronized (lock) {
+            long until = System.nanoTime() + retryAfter.toNanos();
+            if (until - pausedUntil > 0) {
+                pausedUntil = until;
+            }
+            ready.add(task);
+            lock.notifyAll();
+        }
+    }
+
+    private Duration retryAfter(Throwable error) {
+        if (!(error instanceof WebClientResponseException responseException)
+                || responseException.getStatusCode().value() != 429) {
+            return null;
+        }
+        String header = responseException.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (header == null || header.isBlank()) {
+            return defaultRetryAfter;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(header.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration untilDate = Duration.between(ZonedDateTime.now(),
+                        ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return untilDate.isNegative() ? Duration.ZERO : untilDate;
+            } catch (DateTimeParseException ignored) {
+                log.warn("Retry-After tidak dikenali: {}", header);
+                return defaultRetryAfter;
+            }
+        }
+    }
+
+    private int queued(SendPriority priority) {
+        synchronized (lock) {
+            return (int) ready.stream().filter(task -> task.priority == priority).count();
+        }
+    }
+
+    private int deferredCount() {
+        synchronized (lock) {
+            return deferred.size();
+        }
+    }
+
+    private boolean isPaused() {
+        synchronized (lock) {
+            return pausedUntil - System.nanoTime() > 0;
+        }
+    }
+
+    private static final class Task<T> {
+
+        private final String recipient;
+        private final SendPriority priority;
+        private final long sequence;
+        private final long enqueuedAt = System.nanoTime();
+        private final Supplier<Mono<T>> send;
+        private final Sinks.One<T> result = Sinks.one();
+        private long notBefore;
+        private int throttleRetries;
+        private volatile boolean cancelled;
+
+        private Task(String recipient, SendPriority priority, long sequence, Supplier<Mono<T>> send) {
+            this.recipient = recipient == null ? "" : recipient;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.send = send;
+        }
+
+        private void run(BiConsumer<Task<?>, Throwable> onFailure) {
+            Mono.defer(send).subscribe(
+                    result::tryEmitValue,
+                    error -> onFailure.accept(this, error),
+                    result::tryEmitEmpty);
+        }
+    }
+
+    /**
+     * Classic token bucket; callers hold {@code lock}.
+     */
+    private static final class TokenBucket {
+
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(double perSecond, int burst, long now) {
+            this.capacity = Math.max(1, burst);
+            this.tokensPerNano = Math.max(perSecond, 0.001) / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = capacity;
+            this.refilledAt = now;
+        }
+
+        /**
+         * Takes a token if one is available.
+         *
+         * @return 0 if a token was taken, otherwise the nanoseconds until one will be
+         */
+        private long tryAcquire(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+        }
+
+        private void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+    }
+}
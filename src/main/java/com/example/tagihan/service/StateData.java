@@ -15,4 +15,8 @@ public class StateData {
 
 	private State currentState;
 	private Visit visit;
+	/**
+	 * Incremented on every save, so the newer of two copies of a conversation can be told apart.
+	 */
+	private long version;
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.example.tagihan.service;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Durable backing for conversation state, so a conversation survives a restart and can be
+ * continued on another instance. Writes are buffered and may be applied later; reads see
+ * buffered writes.
+ */
+public interface StatePersistence {
+
+	/**
+	 * The conversation this instance should hold for {@code jid}: the stored one when it is
+	 * newer than {@code local}, {@code local} otherwise, or empty when the conversation was
+	 * removed or expired elsewhere.
+	 *
+	 * @param local the copy held in memory, or {@code null}
+	 */
+	Mono<StateData> resolve(String jid, StateData local);
+
+	void saved(String jid, StateData stateData);
+
+	void removed(String jid);
+
+	Mono<Void> flush();
+}
@@ -2,32 +2,61 @@ package com.example.tagihan.service;
 
 import com.example.tagihan.entity.Visit;
 import com.example.tagihan.entity.VisitType;
-import com.example.tagihan.event.StateChangedEvent;
+import com.example.tagihan.event.StateEventBus;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-
 
 @Slf4j
 @Service
 public class StateService {
-	private final ApplicationEventPublisher publisher;
+	private final StateEventBus stateEventBus;
 	private final BillsService billsService;
-	private final Map<String, StateData> state = new LinkedHashMap<>();
+	private final StateStore state;
 	private final UserService userService;
+	private final StatePersistence persistence;
 
-	public StateService(BillsService billsService, ApplicationEventPublisher publisher, UserService userService) {
+	public StateService(BillsService billsService, StateEventBus stateEventBus, UserService userService,
+						StateStore state, StatePersistence persistence) {
 		this.billsService = billsService;
-		this.publisher = publisher;
+		this.stateEventBus = stateEventBus;
 		this.userService = userService;
+		this.state = state;
+		this.persistence = persistence;
+	}
+
+	/**
+	 * Syncs the conversation of the JID with the persisted one before a message is handled:
+	 * a newer copy written by an earlier run or another instance wins, and a conversation
+	 * finished or expired elsewhere is dropped here too.
+	 */
+	public Mono<Void> resume(String jid) {
+		if (jid == null) {
+			return Mono.empty();
+		}
+		StateData local = state.get(jid);
+		return persistence.resolve(jid, local)
+				.doOnNext(stateData -> {
+					if (stateData != local) {
+						state.put(jid, stateData);
+					}
+				})
+				.switchIfEmpty(Mono.fromRunnable(() -> {
+					if (local != null) {
+						state.remove(jid);
+						log.info("State for JID {} no longer persisted, dropped here too", jid);
+					}
+				}))
+				.onErrorResume(error -> {
+					log.warn("Could not resume state for JID {}: {}", jid, error.getMessage());
+					return Mono.empty();
+				})
+				.then();
 	}
 
 	public boolean isUserInState(String jid) {
-		return state.containsKey(jid);
+		return state.contains(jid);
 	}
 
 	public StateData getUserState(String jid) {
@@ -45,9 +74,11 @@ public class StateService {
 	}
 
 	public void setState(String jid, State newState) {
-		if (isUserInState(jid)) {
-			state.get(jid).setCurrentState(newState);
-			publisher.publishEvent(new StateChangedEvent(this, state.get(jid)));
+		StateData stateData = state.get(jid);
+		if (stateData != null) {
+			stateData.setCurrentState(newState);
+			persist(jid, stateData);
+			stateEventBus.publish(this, jid, stateData);
 			log.info("State updated for JID: {}, new State: {}", jid, newState);
 		}
 	}
@@ -269,15 +300,26 @@ public class StateService {
 	}
 
 	private Mono<Void> saveUserState(String jid, StateData stateData) {
-		return Mono.fromRunnable(() -> state.put(jid, stateData))
+		return Mono.fromRunnable(() -> persist(jid, stateData))
 				.then();
 	}
 
+	/**
+	 * Every persisted change bumps the version, so {@link #resume} on another instance prefers
+	 * this copy over the one it holds.
+	 */
+	private void persist(String jid, StateData stateData) {
+		stateData.setVersion(stateData.getVersion() + 1);
+		state.put(jid, stateData);
+		persistence.saved(jid, stateData);
+	}
+
 	public void removeState(String jid) {
-		StateData removed = state.remove(jid);
-		if (removed != null) {
+		if (state.contains(jid)) {
+			state.remove(jid);
 			log.info("State removed for JID: {}", jid);
 		}
+		persistence.removed(jid);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.example.tagihan.service;
+
+/**
+ * Holds the in-progress conversation of each user, keyed by JID.
+ * Implementations must be safe for concurrent use and bound how long and how many
+ * conversations they keep.
+ */
+public interface StateStore {
+
+	StateData get(String jid);
+
+	void put(String jid, StateData stateData);
+
+	void remove(String jid);
+
+	boolean contains(String jid);
+
+	long size();
+
+	/**
+	 * Rough heap footprint of all stored conversations, in bytes.
+	 */
+	long estimatedBytes();
+}
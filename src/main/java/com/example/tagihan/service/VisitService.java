@@ -1,13 +1,21 @@
 package com.example.tagihan.service;
 
+import com.example.tagihan.dto.ReminderVisit;
 import com.example.tagihan.entity.Visit;
+import com.example.tagihan.entity.VisitType;
 import com.example.tagihan.repository.VisitRepository;
+import com.example.tagihan.util.DateRangeUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
 
 @Slf4j
 @Service
@@ -15,14 +23,53 @@ import reactor.core.publisher.Mono;
 public class VisitService {
 
     private final VisitRepository visitRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final PdfCache pdfCache;
 
 
     public Flux<Visit> findAll() {
         return visitRepository.findAll();
     }
 
+    public Flux<Visit> findByDate(LocalDate date) {
+        DateRangeUtil.DateRange range = DateRangeUtil.createDayRange(date);
+        return visitRepository.findByVisitDateInRange(range.start(), range.end());
+    }
+
+    /**
+     * Visits for an LKN: one SPK, informational visits excluded, optionally limited to a date
+     * range and to the visits of one user. Runs entirely on the {spk, visitType, visitDate} index.
+     *
+     * @param range  inclusive visit date range, or {@code null} for all dates
+     * @param userId only visits logged by this user, or {@code null} for everyone
+     */
+    public Flux<Visit> findForLkn(String spk, DateRangeUtil.DateRange range, String userId) {
+        return mongoTemplate.find(lknQuery(spk, range, userId), Visit.class);
+    }
+
+    /**
+     * The query behind {@link #findForLkn}, also explained by the index self-check.
+     */
+    public static Query lknQuery(String spk, DateRangeUtil.DateRange range, String userId) {
+        Criteria criteria = Criteria.where("spk").is(spk)
+                .and("visitType").ne(VisitType.INFORMATIONAL);
+        if (range != null) {
+            criteria = criteria.and("visitDate").gte(range.start()).lte(range.end());
+        }
+        if (userId != null) {
+            criteria = criteria.and("userId").is(userId);
+        }
+
+        return Query.query(criteria).with(Sort.by(Sort.Direction.ASC, "visitDate"));
+    }
+
+    public Flux<ReminderVisit> findReminders(LocalDate reminderDate) {
+        return visitRepository.findByReminderDate(reminderDate);
+    }
+
     public Mono<Visit> save(Visit visit) {
         log.info("Saving visit: {}", visit);
-        return visitRepository.save(visit);
+        return visitRepository.save(visit)
+                .doOnNext(pdfCache::invalidate);
     }
 }
\ No newline at end of file
@@ -0,0 +1,228 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.dto.VisitStatsRow;
+import com.example.tagihan.dto.VisitStatsTotal;
+import com.example.tagihan.entity.User;
+import com.example.tagihan.entity.Visit;
+import com.example.tagihan.util.DateRangeUtil;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Visit rollups per AO, day and visit type, computed by one aggregation pipeline so only the
+ * summary rows leave the database.
+ * Visits are first grouped down to one row per SPK, and only those rows are joined with the
+ * live bills collection on {@code noSpk}, so each bill is looked up once per row instead of once
+ * per visit. A bill's amount due is counted once per row it appears in; {@link #totals} and
+ * {@link #overall} count it once for the whole range.
+ * A rollup covers at most {@code stats.max-days} days.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VisitStatsService {
+
+    private static final String TIMEZONE = "Asia/Jakarta";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Getter
+    @Value("${stats.max-days:92}")
+    private int maxDays;
+
+    /**
+     * Whether {@code [from, to]} is a valid range no longer than {@code stats.max-days}.
+     */
+    public boolean isAllowedRange(LocalDate from, LocalDate to) {
+        return !to.isBefore(from) && ChronoUnit.DAYS.between(from, to) < maxDays;
+    }
+
+    /**
+     * @param userId only the visits of this user, or {@code null} for every AO
+     */
+    public Flux<VisitStatsRow> rollup(LocalDate from, LocalDate to, String userId) {
+        if (!isAllowedRange(from, to)) {
+            return Flux.error(new IllegalArgumentException("Rentang tanggal maksimal " + maxDays + " hari"));
+        }
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(stage("$match", visitMatch(from, to, userId)));
+        stages.add(stage("$group", new Document("_id", new Document("userId", "$userId")
+                .append("date", new Document("$dateToString", new Document("format", "%Y-%m-%d")
+                        .append("date", "$visitDate")
+                        .append("timezone", TIMEZONE)))
+                .append("visitType", "$visitType")
+                .append("spk", "$spk"))
+                .append("visits", new Document("$sum", 1))
+                .append("appointments", new Document("$sum", new Document("$cond",
+                        List.of(new Document("$gt", List.of("$appointment", 0)), 1, 0))))
+                .append("appointmentTotal", new Document("$sum", new Document("$ifNull", List.of("$appointment", 0))))));
+        stages.add(stage("$lookup", new Document("from", BillsCollectionManager.LIVE_COLLECTION)
+                .append("localField", "_id.spk")
+                .append("foreignField", "noSpk")
+                .append("as", "bill")));
+        stages.add(stage("$group", new Document("_id", new Document("userId", "$_id.userId")
+                .append("date", "$_id.date")
+                .append("visitType", "$_id.visitType"))
+                .append("visits", new Document("$sum", "$visits"))
+                .append("spkCount", new Document("$sum", 1))
+                .append("appointments", new Document("$sum", "$appointments"))
+                .append("appointmentTotal", new Document("$sum", "$appointmentTotal"))
+                .append("dueTotal", new Document("$sum", new Document("$add", List.of(
+                        firstOrZero("$bill.minInterest"),
+                        firstOrZero("$bill.minPrincipal")))))));
+        stages.add(stage("$lookup", new Document("from", mongoTemplate.getCollectionName(User.class))
+                .append("localField", "_id.userId")
+                .append("foreignField", "_id")
+                .append("as", "user")));
+        stages.add(stage("$project", new Document("_id", 0)
+                .append("userId", "$_id.userId")
+                .append("accountOfficer", new Document("$arrayElemAt", List.of("$user.accountOfficer", 0)))
+                .append("date", "$_id.date")
+                .append("visitType", "$_id.visitType")
+                .append("visits", 1)
+                .append("spkCount", 1)
+                .append("appointments", 1)
+                .append("appointmentTotal", 1)
+                .append("dueTotal", 1)
+                .append("collectionRate", collectionRate())));
+        stages.add(stage("$sort", new Document("userId", 1).append("date", 1).append("visitType", 1)));
+
+        return mongoTemplate.aggregate(Aggregation.newAggregation(stages),
+                        mongoTemplate.getCollectionName(Visit.class), Document.class)
+                .map(VisitStatsService::toRow)
+                .doOnSubscribe(sub -> log.info("Rekap kunjungan {} s/d {} (user: {})", from, to, userId));
+    }
+
+    /**
+     * Per-AO totals over the range, each SPK counted once per AO.
+     *
+     * @param userId only this user, or {@code null} for every AO
+     */
+    public Flux<VisitStatsTotal> totals(LocalDate from, LocalDate to, String userId) {
+        return aggregateTotals(from, to, userId, true);
+    }
+
+    /**
+     * Totals of every AO together, each SPK counted once even when several AOs visited it.
+     */
+    public Mono<VisitStatsTotal> overall(LocalDate from, LocalDate to) {
+        return aggregateTotals(from, to, null, false).next();
+    }
+
+    private Flux<VisitStatsTotal> aggregateTotals(LocalDate from, LocalDate to, String userId, boolean perAo) {
+        if (!isAllowedRange(from, to)) {
+            return Flux.error(new IllegalArgumentException("Rentang tanggal maksimal " + maxDays + " hari"));
+        }
+        Document spkKey = new Document("spk", "$spk");
+        if (perAo) {
+            spkKey.append("userId", "$userId");
+        }
+
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(stage("$match", visitMatch(from, to, userId)));
+        stages.add(stage("$group", new Document("_id", spkKey)
+                .append("appointmentTotal", new Document("$sum", new Document("$ifNull", List.of("$appointment", 0))))));
+        stages.add(stage("$lookup", new Document("from", BillsCollectionManager.LIVE_COLLECTION)
+                .append("localField", "_id.spk")
+                .append("foreignField", "noSpk")
+                .append("as", "bill")));
+        stages.add(stage("$group", new Document("_id", perAo ? "$_id.userId" : null)
+                .append("spkCount", new Document("$sum", 1))
+                .append("appointmentTotal", new Document("$sum", "$appointmentTotal"))
+                .append("dueTotal", new Document("$sum", new Document("$add", List.of(
+                        firstOrZero("$bill.minInterest"),
+                        firstOrZero("$bill.minPrincipal")))))));
+        Document project = new Document("_id", 0)
+                .append("userId", "$_id")
+                .append("spkCount", 1)
+                .append("appointmentTotal", 1)
+                .append("dueTotal", 1)
+                .append("collectionRate", collectionRate());
+        if (perAo) {
+            stages.add(stage("$lookup", new Document("from", mongoTemplate.getCollectionName(User.class))
+                    .append("localField", "_id")
+                    .append("foreignField", "_id")
+                    .append("as", "user")));
+            project.append("accountOfficer", new Document("$arrayElemAt", List.of("$user.accountOfficer", 0)));
+        }
+        stages.add(stage("$project", project));
+        stages.add(stage("$sort", new Document("userId", 1)));
+
+        return mongoTemplate.aggregate(Aggregation.newAggregation(stages),
+                        mongoTemplate.getCollectionName(Visit.class), Document.class)
+                .map(VisitStatsService::toTotal);
+    }
+
+    private static Document visitMatch(LocalDate from, LocalDate to, String userId) {
+        DateRangeUtil.DateRange range = DateRangeUtil.createDateRange(from, to);
+        Document match = new Document("visitDate", new Document("$gte", Date.from(range.start()))
+                .append("$lte", Date.from(range.end())));
+        if (userId != null) {
+            match.append("userId", userId);
+        }
+        return match;
+    }
+
+    private static Document collectionRate() {
+        return new Document("$cond", Arrays.asList(
+                new Document("$gt", List.of("$dueTotal", 0)),
+                new Document("$divide", List.of("$appointmentTotal", "$dueTotal")),
+                null));
+    }
+
+    private static VisitStatsTotal toTotal(Document document) {
+        Number rate = (Number) document.get("collectionRate");
+        return new VisitStatsTotal(
+                document.getString("userId"),
+                document.getString("accountOfficer"),
+                asLong(document, "spkCount"),
+                asLong(document, "appointmentTotal"),
+                asLong(document, "dueTotal"),
+                rate != null ? rate.doubleValue() : null);
+    }
+
+    private static VisitStatsRow toRow(Document document) {
+        String date = document.getString("date");
+        Number rate = (Number) document.get("collectionRate");
+        return new VisitStatsRow(
+                document.getString("userId"),
+                document.getString("accountOfficer"),
+                date != null ? LocalDate.parse(date) : null,
+                document.getString("visitType"),
+                asLong(document, "visits"),
+                asLong(document, "spkCount"),
+                asLong(document, "appointments"),
+                asLong(document, "appointmentTotal"),
+                asLong(document, "dueTotal"),
+                rate != null ? rate.doubleValue() : null);
+    }
+
+    private static long asLong(Document document, String field) {
+        Object value = document.get(field);
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private static Document firstOrZero(String arrayField) {
+        return new Document("$ifNull", List.of(new Document("$arrayElemAt", List.of(arrayField, 0)), 0));
+    }
+
+    private static AggregationOperation stage(String name, Document body) {
+        return context -> new Document(name, body);
+    }
+}
@@ -1,11 +1,15 @@
 package com.example.tagihan.service;
 
+import com.example.tagihan.configuration.UpstreamClient;
 import com.example.tagihan.dto.ResponseDTO;
 import com.example.tagihan.dto.WhatsAppRequestDTO;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MultiValueMap;
@@ -26,21 +30,26 @@ import java.util.concurrent.TimeoutException;
 public class WhatsappService {
 
 	private final WebClient webClient;
+	private final SendScheduler sendScheduler;
 	private final ObjectMapper objectMapper = new ObjectMapper();
 
 	private static final int MAX_RETRY_ATTEMPTS = 3;
 	private static final Duration RETRY_DELAY = Duration.ofSeconds(2);
 
 	public WhatsappService(WebClient.Builder webClientBuilder,
+						   @Qualifier("gatewayClient") UpstreamClient gatewayClient,
+						   SendScheduler sendScheduler,
 						   @Value("${base.whatsapp.url}") String whatsappUrl,
 						   @Value("${base.whatsapp.token}") String token,
 						   @Value("${base.whatsapp.device.id}") String deviceId) {
 		this.webClient = webClientBuilder
+				.clientConnector(gatewayClient.connector())
 				.baseUrl(whatsappUrl)
 				.defaultHeader("Authorization", "Basic " + Base64.getEncoder()
 						.encodeToString((token).getBytes()))
 				.defaultHeader("X-Device-Id", deviceId)
 				.build();
+		this.sendScheduler = sendScheduler;
 	}
 
 	public Mono<ResponseDTO> sendMessage(WhatsAppRequestDTO whatsappRequestDTO) {
@@ -69,7 +78,14 @@ public class WhatsappService {
 		builder.part("is_forwarded", whatsappRequestDTO.isForwarded());
 		builder.part("caption", whatsappRequestDTO.getCaption());
 
-		if (whatsappRequestDTO.getMultipartFile() != null && !whatsappRequestDTO.getMultipartFile().isEmpty()) {
+		if (whatsappRequestDTO.getContent() != null) {
+			String fileName = whatsappRequestDTO.getFileName();
+			builder.asyncPart("file", whatsappRequestDTO.getContent(), DataBuffer.class)
+					.filename(fileName)
+					.contentType(MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM));
+		} else if (whatsappRequestDTO.getResource() != null) {
+			builder.part("file", whatsappRequestDTO.getResource());
+		} else if (whatsappRequestDTO.getMultipartFile() != null && !whatsappRequestDTO.getMultipartFile().isEmpty()) {
 			try {
 				builder.part("file", whatsappRequestDTO.getMultipartFile().getResource());
 			} catch (Exception e) {
@@ -88,13 +104,13 @@ public class WhatsappService {
 
 		MultiValueMap<String, HttpEntity<?>> body = builder.build();
 
-		return webClient
-				.post()
-				.uri("/send/file")
-				.contentType(MediaType.MULTIPART_FORM_DATA)
-				.body(BodyInserters.fromMultipartData(body))
-				.retrieve()
-				.bodyToMono(ResponseDTO.class)
+		return sendScheduler.schedule(whatsappRequestDTO.getPhone(), whatsappRequestDTO.getPriority(), () -> webClient
+						.post()
+						.uri("/send/file")
+						.contentType(MediaType.MULTIPART_FORM_DATA)
+						.body(BodyInserters.fromMultipartData(body))
+						.retrieve()
+						.bodyToMono(ResponseDTO.class))
 				.retryWhen(createRetrySpec("send document"))
 				.map(this::map)
 				.onErrorResume(this::handleError);
@@ -123,13 +139,13 @@ public class WhatsappService {
 
 		MultiValueMap<String, HttpEntity<?>> body = builder.build();
 
-		return webClient
-				.post()
-				.uri("/send/video")
-				.contentType(MediaType.MULTIPART_FORM_DATA)
-				.body(BodyInserters.fromMultipartData(body))
-				.retrieve()
-				.bodyToMono(ResponseDTO.class)
+		return sendScheduler.schedule(requestDTO.getPhone(), requestDTO.getPriority(), () -> webClient
+						.post()
+						.uri("/send/video")
+						.contentType(MediaType.MULTIPART_FORM_DATA)
+						.body(BodyInserters.fromMultipartData(body))
+						.retrieve()
+						.bodyToMono(ResponseDTO.class))
 				.retryWhen(createRetrySpec("send video"))
 				.map(this::map)
 				.onErrorResume(this::handleError);
@@ -160,13 +176,13 @@ public class WhatsappService {
 
 		MultiValueMap<String, HttpEntity<?>> multipartData = builder.build();
 
-		return webClient
-				.post()
-				.uri("/send/image")
-				.contentType(MediaType.MULTIPART_FORM_DATA)
-				.body(BodyInserters.fromMultipartData(multipartData))
-				.retrieve()
-				.bodyToMono(ResponseDTO.class)
+		return sendScheduler.schedule(request.getPhone(), request.getPriority(), () -> webClient
+						.post()
+						.uri("/send/image")
+						.contentType(MediaType.MULTIPART_FORM_DATA)
+						.body(BodyInserters.fromMultipartData(multipartData))
+						.retrieve()
+						.bodyToMono(ResponseDTO.class))
 				.retryWhen(createRetrySpec("send image"))
 				.map(this::map)
 				.onErrorResume(this::handleError);
@@ -174,31 +190,32 @@ public class WhatsappService {
 
 	public Mono<ResponseDTO> sendMessageText(WhatsAppRequestDTO whatsAppRequestDTO) {
 		log.info("Sending WhatsApp message to: {}", whatsAppRequestDTO.getPhone());
-		return webClient
-				.post()
-				.uri("/send/message")
-				.contentType(MediaType.APPLICATION_JSON)
-				.bodyValue(whatsAppRequestDTO)
-				.exchangeToMono(response -> {
-					if (response.statusCode().isError()) {
-						return response.bodyToMono(String.class)
-								.flatMap(errorBody -> {
-									log.error("API Error Raw Response: {}", errorBody);
-									return Mono.error(new RuntimeException("API Error: " + response.statusCode()));
-								});
-					}
+		return sendScheduler.schedule(whatsAppRequestDTO.getPhone(), whatsAppRequestDTO.getPriority(), () -> webClient
+						.post()
+						.uri("/send/message")
+						.contentType(MediaType.APPLICATION_JSON)
+						.bodyValue(whatsAppRequestDTO)
+						.exchangeToMono(response -> {
+							if (response.statusCode().isError()) {
+								// keep status and headers (Retry-After) for the scheduler and the retry filter
+								return response.createException()
+										.flatMap(exception -> {
+											log.error("API Error Raw Response: {}", exception.getResponseBodyAsString());
+											return Mono.error(exception);
+										});
+							}
 
-					return response.bodyToMono(String.class)
-							.doOnNext(rawBody -> log.info("Raw Response: {}", rawBody))
-							.<ResponseDTO>handle((rawBody, sink) -> {
-								try {
-									sink.next(objectMapper.readValue(rawBody, ResponseDTO.class));
-								} catch (Exception e) {
-									log.error("Mapping error: {}", e.getMessage());
-									sink.error(new RuntimeException("Failed to parse response"));
-								}
-							});
-				})
+							return response.bodyToMono(String.class)
+									.doOnNext(rawBody -> log.info("Raw Response: {}", rawBody))
+									.<ResponseDTO>handle((rawBody, sink) -> {
+										try {
+											sink.next(objectMapper.readValue(rawBody, ResponseDTO.class));
+										} catch (Exception e) {
+											log.error("Mapping error: {}", e.getMessage());
+											sink.error(new RuntimeException("Failed to parse response"));
+										}
+									});
+						}))
 				.retryWhen(createRetrySpec("send text message"))
 				.map(this::map)
 				.doOnError(err -> log.error("Processing Error: {}", err.getMessage()))
@@ -227,7 +244,8 @@ public class WhatsappService {
 	private boolean isRetryableError(Throwable throwable) {
 		if (throwable instanceof WebClientResponseException webClientException) {
 			int statusCode = webClientException.getStatusCode().value();
-			boolean shouldRetry = statusCode >= 500 || statusCode == 429;
+			// 429 is retried by the SendScheduler after Retry-After, not on this fixed backoff
+			boolean shouldRetry = statusCode >= 500;
 			log.debug("HTTP {} - Retryable: {}", statusCode, shouldRetry);
 			return shouldRetry;
 		}
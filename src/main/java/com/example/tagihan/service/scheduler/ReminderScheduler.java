@@ -1,16 +1,14 @@
 package com.example.tagihan.service.scheduler;
 
-import com.example.tagihan.dto.WhatsAppMessageType;
-import com.example.tagihan.dto.WhatsAppRequestDTO;
-import com.example.tagihan.entity.Visit;
+import com.example.tagihan.dto.ReminderVisit;
+import com.example.tagihan.dto.SendPriority;
+import com.example.tagihan.service.OutboxService;
 import com.example.tagihan.service.VisitService;
-import com.example.tagihan.service.WhatsappService;
 import com.example.tagihan.util.CurrencyUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
@@ -22,75 +20,57 @@ import java.time.ZoneId;
 public class ReminderScheduler {
 
     private final VisitService visitService;
-    private final WhatsappService whatsappService;
+    private final OutboxService outboxService;
 
     private static final ZoneId JAKARTA_ZONE = ZoneId.of("Asia/Jakarta");
+    private static final int SEND_CONCURRENCY = 16;
 
     @Scheduled(cron = "0 30 7 * * *", zone = "Asia/Jakarta")
     public void sendReminder() {
         LocalDate today = LocalDate.now(JAKARTA_ZONE);
         log.info("Starting reminder scheduler for date: {}", today);
 
-        visitService.findAll()
-                .filter(visit -> visit.getReminderDate() != null && visit.getReminderDate().equals(today))
-                .collectList()
-                .flatMap(visits -> {
-                    if (visits.isEmpty()) {
+        visitService.findReminders(today)
+                .filter(visit -> visit.userId() != null && !visit.userId().isBlank())
+                .flatMap(visit -> sendReminderMessage(visit, today), SEND_CONCURRENCY)
+                .count()
+                .doOnSuccess(count -> {
+                    if (count == 0) {
                         log.info("No reminders to send for today");
-                        return Mono.empty();
+                    } else {
+                        log.info("Reminder scheduler completed successfully, {} reminders queued", count);
                     }
-
-                    log.info("Found {} visits with reminders for today", visits.size());
-
-                    return Flux.fromIterable(visits)
-                            .filter(visit -> visit.getUserId() != null && !visit.getUserId().isBlank())
-                            .flatMap(this::sendReminderMessage)
-                            .then();
                 })
-                .doOnSuccess(v -> log.info("Reminder scheduler completed successfully"))
                 .doOnError(error -> log.error("Error in reminder scheduler", error))
                 .subscribe();
     }
 
-    private Mono<Void> sendReminderMessage(Visit visit) {
-        String message = buildReminderMessage(visit);
-
-        WhatsAppRequestDTO request = WhatsAppRequestDTO.builder()
-                .phone(visit.getUserId())
-                .message(message)
-                .isForwarded(false)
-                .type(WhatsAppMessageType.TEXT)
-                .build();
+    private Mono<Boolean> sendReminderMessage(ReminderVisit visit, LocalDate date) {
+        String idempotencyKey = "reminder:" + visit.id() + ":" + date;
 
-        return whatsappService.sendMessageText(request)
-                .doOnNext(response -> {
-                    if ("200".equals(response.getCode())) {
-                        log.info("Reminder sent successfully to {} for visit {}", visit.getUserId(), visit.getName());
-                    } else {
-                        log.warn("Failed to send reminder to {}: {} - {}",
-                                visit.getUserId(), response.getCode(), response.getMessage());
-                    }
-                })
-                .then()
+        return outboxService.enqueueText(idempotencyKey, visit.userId(), buildReminderMessage(visit), SendPriority.BULK)
+                .doOnNext(queued -> log.info("Reminder for visit {} queued for {} ({})",
+                        visit.name(), visit.userId(), queued.getStatus()))
+                .thenReturn(true)
                 .onErrorResume(error -> {
-                    log.error("Error sending reminder for visit {}", visit.getId(), error);
-                    return Mono.empty();
+                    log.error("Error queueing reminder for visit {}", visit.id(), error);
+                    return Mono.just(false);
                 });
     }
 
-    private String buildReminderMessage(Visit visit) {
+    private String buildReminderMessage(ReminderVisit visit) {
         StringBuilder message = new StringBuilder();
         message.append("🔔 *REMINDER KUNJUNGAN HARI INI*\n\n");
-        message.append("Nama: ").append(visit.getName() != null ? visit.getName() : "-").append("\n");
-        message.append("SPK: ").append(visit.getSpk() != null ? visit.getSpk() : "-").append("\n");
-        message.append("Alamat: ").append(visit.getAddress() != null ? visit.getAddress() : "-").append("\n");
+        message.append("Nama: ").append(visit.name() != null ? visit.name() : "-").append("\n");
+        message.append("SPK: ").append(visit.spk() != null ? visit.spk() : "-").append("\n");
+        message.append("Alamat: ").append(visit.address() != null ? visit.address() : "-").append("\n");
 
-        if (visit.getAppointment() != null && visit.getAppointment() > 0) {
-            message.append("Janji Bayar:").append(CurrencyUtil.formatRupiah(visit.getAppointment()));
+        if (visit.appointment() != null && visit.appointment() > 0) {
+            message.append("Janji Bayar:").append(CurrencyUtil.formatRupiah(visit.appointment()));
         }
 
-        if (visit.getNote() != null && !visit.getNote().isBlank()) {
-            message.append("\nCatatan: ").append(visit.getNote()).append("\n");
+        if (visit.note() != null && !visit.note().isBlank()) {
+            message.append("\nCatatan: ").append(visit.note()).append("\n");
         }
 
         message.append("\n_Jangan lupa kunjungan hari ini!_");
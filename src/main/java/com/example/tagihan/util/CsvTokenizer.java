@@ -0,0 +1,283 @@
+package com.example.tagihan.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Incremental RFC 4180 tokenizer working directly on bytes.
+ * Input can be fed in arbitrary chunks (a record may span several network buffers);
+ * every completed record is handed to the consumer as a {@link Row} view that is only
+ * valid for the duration of the callback. Fields are kept as byte ranges, so numeric
+ * columns can be read with {@link Row#getLong(int)} without creating Strings.
+ * A CR directly followed by LF ends the record; any other CR outside quotes is kept as data.
+ */
+public class CsvTokenizer {
+
+    /**
+     * Returned by {@link Row#getLong(int)} when a field is not a plain integer.
+     */
+    public static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    private static final byte QUOTE = '"';
+    private static final byte COMMA = ',';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private byte[] data = new byte[4096];
+    private int length;
+    private int fieldStart;
+    private boolean fieldQuoted;
+
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private boolean[] quoted = new boolean[32];
+    private int fieldCount;
+
+    private boolean inQuotes;
+    private boolean quotePending;
+    private boolean crPending;
+    private long recordNumber;
+
+    private final Row row = new Row();
+
+    public void feed(ByteBuffer buffer, Consumer<Row> consumer) {
+        while (buffer.hasRemaining()) {
+            accept(buffer.get(), consumer);
+        }
+    }
+
+    /**
+     * Flushes the last record when the input does not end with a line break.
+     *
+     * @return {@code false} if the input ended inside a quoted field
+     */
+    public boolean finish(Consumer<Row> consumer) {
+        boolean complete = !inQuotes || quotePending;
+        inQuotes = false;
+        quotePending = false;
+        crPending = false;
+        if (length > 0 || fieldCount > 0 || fieldQuoted) {
+            endField();
+            endRecord(consumer);
+        }
+        return complete;
+    }
+
+    private void accept(byte b, Consumer<Row> consumer) {
+        if (crPending) {
+            crPending = false;
+            if (b != LF) {
+                append(CR);
+            }
+        }
+        if (inQuotes) {
+            if (quotePending) {
+                quotePending = false;
+                if (b == QUOTE) {
+                    append(QUOTE);
+                    return;
+                }
+                inQuotes = false;
+            } else {
+                if (b == QUOTE) {
+                    quotePending = true;
+                } else {
+                    append(b);
+                }
+                return;
+            }
+        }
+
+        switch (b) {
+            case COMMA -> endField();
+            case LF -> {
+                endField();
+                endRecord(consumer);
+            }
+            case CR -> crPending = true;
+            case QUOTE -> {
+                if (onlyWhitespaceSinceFieldStart()) {
+                    length = fieldStart;
+                    inQuotes = true;
+                    fieldQuoted = true;
+                } else {
+                    append(b);
+                }
+            }
+            default -> append(b);
+        }
+    }
+
+    private boolean onlyWhitespaceSinceFieldStart() {
+        if (fieldQuoted) {
+            return false;
+        }
+        for (int i = fieldStart; i < length; i++) {
+            if (data[i] != ' ' && data[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(byte b) {
+        if (length == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[length++] = b;
+    }
+
+    private void endField() {
+        if (fieldCount == starts.length) {
+            int newSize = starts.length * 2;
+            starts = Arrays.copyOf(starts, newSize);
+            ends = Arrays.copyOf(ends, newSize);
+            quoted = Arrays.copyOf(quoted, newSize);
+        }
+        starts[fieldCount] = fieldStart;
+        ends[fieldCount] = length;
+        quoted[fieldCount] = fieldQuoted;
+        fieldCount++;
+        fieldStart = length;
+        fieldQuoted = false;
+    }
+
+    private void endRecord(Consumer<Row> consumer) {
+        recordNumber++;
+        try {
+            if (!row.isBlank()) {
+                consumer.accept(row);
+            }
+        } finally {
+            length = 0;
+            fieldStart = 0;
+            fieldCount = 0;
+            fieldQuoted = false;
+        }
+    }
+
+    /**
+     * Read-only view of the record currently being emitted.
+     */
+    public class Row {
+
+        /**
+         * 1-based record number in the input, counting the header and blank lines.
+         */
+        public long getRecordNumber() {
+            return recordNumber;
+        }
+
+        public int getFieldCount() {
+            return fieldCount;
+        }
+
+        public boolean isBlank() {
+            return fieldCount == 1 && !quoted[0] && trimmedStart(0) == trimmedEnd(0);
+        }
+
+        public boolean isEmpty(int index) {
+            return index >= fieldCount || trimmedStart(index) == trimmedEnd(index);
+        }
+
+        /**
+         * Field value decoded as UTF-8. Unquoted fields are trimmed; quoted fields are returned as written.
+         * Missing trailing fields yield an empty string.
+         */
+        public String getString(int index) {
+            if (index >= fieldCount) {
+                return "";
+            }
+            int start = trimmedStart(index);
+            int end = trimmedEnd(index);
+            return new String(data, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parses the field as a signed decimal integer straight from the buffered bytes.
+         * Empty fields yield {@code 0}; anything else that is not a plain integer, or overflows,
+         * yields {@link #NOT_A_NUMBER}.
+         */
+        public long getLong(int index) {
+            if (index >= fieldCount) {
+                return 0L;
+            }
+            int i = trimmedStart(index);
+            int end = trimmedEnd(index);
+            if (i == end) {
+                return 0L;
+            }
+
+            boolean negative = false;
+            if (data[i] == '-' || data[i] == '+') {
+                negative = data[i] == '-';
+                i++;
+                if (i == end) {
+                    return NOT_A_NUMBER;
+                }
+            }
+
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = data[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return NOT_A_NUMBER;
+                }
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    return NOT_A_NUMBER;
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * 64-bit FNV-1a hash over the decoded field contents, field boundaries included.
+         * Stable across runs and independent of how the input was split into buffers.
+         */
+        public long contentHash() {
+            long hash = 0xcbf29ce484222325L;
+            for (int f = 0; f < fieldCount; f++) {
+                int start = trimmedStart(f);
+                int end = trimmedEnd(f);
+                for (int i = start; i < end; i++) {
+                    hash ^= (data[i] & 0xff);
+                    hash *= 0x100000001b3L;
+                }
+                hash ^= COMMA;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        private int trimmedStart(int index) {
+            int start = starts[index];
+            if (quoted[index]) {
+                return start;
+            }
+            int end = ends[index];
+            while (start < end && isWhitespace(data[start])) {
+                start++;
+            }
+            return start;
+        }
+
+        private int trimmedEnd(int index) {
+            int end = ends[index];
+            if (quoted[index]) {
+                return end;
+            }
+            int start = starts[index];
+            while (end > start && isWhitespace(data[end - 1])) {
+                end--;
+            }
+            return end;
+        }
+
+        private boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t';
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.tagihan.service;
+
+import com.example.tagihan.config.PdfSettings;
+import com.example.tagihan.entity.Visit;
+import com.example.tagihan.entity.VisitType;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Renders the report templates on fixture visits with Chromium and with openhtmltopdf and
+ * compares page count and the words of each extracted text line, so {@code pdf.engine} can be
+ * switched with confidence. Tagged {@code integration}: it only runs with {@code -Pintegration}
+ * on a machine with Playwright's Chromium, and fails there when Chromium cannot be launched.
+ */
+@Tag("integration")
+class PdfEngineParityTest {
+
+    private static final PdfSettings SETTINGS = PdfSettings.builder()
+            .format("A4")
+            .marginSize("10mm")
+            .printBackground(true)
+            .headless(true)
+            .poolSize(1)
+            .maxRendersPerBrowser(100)
+            .acquireTimeout(Duration.ofSeconds(30))
+            .renderTimeout(Duration.ofSeconds(60))
+            .warmUp(false)
+            .build();
+
+    private static BrowserPool browserPool;
+    private static PlaywrightPdfConverter chromium;
+    private static PdfService pdfService;
+
+    private final OpenHtmlPdfConverter openHtml = new OpenHtmlPdfConverter();
+
+    @BeforeAll
+    static void setUp() {
+        try {
+            browserPool = new BrowserPool(SETTINGS);
+            browserPool.init();
+            chromium = new PlaywrightPdfConverter(browserPool, SETTINGS);
+            chromium.convert("<html><body>ok</body></html>");
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Chromium tidak tersedia untuk uji paritas: " + e.getMessage(), e);
+        }
+
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        pdfService = new PdfService(templateEngine, chromium, null, SETTINGS);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (browserPool != null) {
+            browserPool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"lkn", "rkh"})
+    void enginesProduceTheSameReport(String template) throws IOException {
+        String html = pdfService.renderHtml(fixtureVisits(template), "Parity Check", template);
+
+        Extracted expected = extract(chromium.convert(html));
+        Extracted actual = extract(openHtml.convert(html));
+
+        assertThat(actual.pages()).as("halaman %s", template).isEqualTo(expected.pages());
+        assertThat(actual.lines()).as("teks %s", template).isEqualTo(expected.lines());
+    }
+
+    private static List<Visit> fixtureVisits(String template) {
+        if ("lkn".equals(template)) {
+            return List.of(
+                    visit("ao-1", "123456789012", VisitType.TAGIHAN, "2026-01-05T02:00:00Z", 1_500_000L, null),
+                    visit("ao-1", "123456789012", VisitType.MONITORING, "2026-01-12T03:30:00Z", null, "2026-01-20"),
+                    visit("ao-1", "123456789012", VisitType.TAGIHAN, "2026-01-19T04:15:00Z", 750_000L, null));
+        }
+        return List.of(
+                visit("ao-1", "123456789012", VisitType.TAGIHAN, "2026-01-31T01:00:00Z", 1_500_000L, "2026-02-05"),
+                visit("ao-1", "223456789012", VisitType.SURVEY, "2026-01-31T02:00:00Z", null, null),
+                visit("ao-2", "323456789012", VisitType.CANVASING, "2026-01-31T03:00:00Z", null, null),
+                visit("ao-2", "423456789012", VisitType.TAGIHAN, "2026-01-31T04:00:00Z", 2_000_000L, null));
+    }
+
+    private static Visit visit(String userId, String spk, VisitType type, String visitDate, Long appointment,
+                               String reminderDate) {
+        return Visit.builder()
+                .userId(userId)
+                .spk(spk)
+                .visitType(type)
+                .visitDate(Instant.parse(visitDate))
+                .name("Nasabah " + spk.substring(0, 3))
+                .address("Jl. Merdeka No. " + spk.substring(0, 2))
+                .plafond(50_000_000L)
+                .interest(450_000L)
+                .principal(1_000_000L)
+                .appointment(appointment)
+                .reminderDate(reminderDate != null ? LocalDate.parse(reminderDate) : null)
+                .usaha("Warung")
+                .note("Bertemu nasabah, usaha berjalan normal")
+                .build();
+    }
+
+    private static Extracted extract(byte[] pdf) throws IOException {
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setSortByPosition(true);
+            String text = stripper.getText(document);
+            List<List<String>> lines = text.lines()
+                    .map(String::strip)
+                    .filter(line -> !line.isEmpty())
+                    .map(line -> Arrays.asList(line.split("\\s+")))
+                    .toList();
+            return new Extracted(document.getNumberOfPages(), lines);
+        }
+    }
+
+    /**
+     * Page count and, per non-blank text line, its whitespace-separated words.
+     */
+    private record Extracted(int pages, List<List<String>> lines) {
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.tagihan.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvTokenizerTest {
+
+    @Test
+    void keepsCommasInsideQuotedFields() {
+        assertThat(parse("a,\"b,c\",d\n").rows())
+                .containsExactly(List.of("a", "b,c", "d"));
+    }
+
+    @Test
+    void unescapesDoubledQuotes() {
+        assertThat(parse("\"he said \"\"hi\"\"\",x\n").rows())
+                .containsExactly(List.of("he said \"hi\"", "x"));
+    }
+
+    @Test
+    void endsRecordsOnCrlf() {
+        assertThat(parse("a,b\r\nc,d\r\n").rows())
+                .containsExactly(List.of("a", "b"), List.of("c", "d"));
+    }
+
+    @Test
+    void keepsLineBreaksInsideQuotedFields() {
+        assertThat(parse("\"x\r\ny\",z\r\n").rows())
+                .containsExactly(List.of("x\r\ny", "z"));
+    }
+
+    @Test
+    void keepsBareCrOutsideQuotesAsData() {
+        assertThat(parse("a\rb,c\n").rows())
+                .containsExactly(List.of("a\rb", "c"));
+    }
+
+    @Test
+    void treatsTrailingCrAtEndOfInputAsLineEnd() {
+        Parsed parsed = parse("a,b\r");
+        assertThat(parsed.complete()).isTrue();
+        assertThat(parsed.rows()).containsExactly(List.of("a", "b"));
+    }
+
+    @Test
+    void givesTheSameRecordsHoweverTheInputIsSplit() {
+        String csv = "spk,nama\r\n1,\"Budi, S\"\r\n2,\"kata \"\"ok\"\"\"\r\n3,a\rb\r\n4,\"x\r\ny\"";
+        Parsed whole = parse(csv);
+        assertThat(whole.rows()).hasSize(5);
+
+        byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+        for (int split = 1; split < bytes.length; split++) {
+            Parsed halves = parse(bytes, split);
+            assertThat(halves.rows()).as("split at %d", split).isEqualTo(whole.rows());
+            assertThat(halves.hashes()).as("split at %d", split).isEqualTo(whole.hashes());
+        }
+        Parsed bytewise = parse(bytes, everyByte(bytes.length));
+        assertThat(bytewise.rows()).isEqualTo(whole.rows());
+        assertThat(bytewise.hashes()).isEqualTo(whole.hashes());
+    }
+
+    @Test
+    void splitsCrlfAcrossBuffers() {
+        byte[] bytes = "a,b\r\nc\r\n".getBytes(StandardCharsets.UTF_8);
+        Parsed parsed = parse(bytes, 4);
+        assertThat(parsed.rows()).containsExactly(List.of("a", "b"), List.of("c"));
+    }
+
+    @Test
+    void reportsUnterminatedQuoteOnFinish() {
+        Parsed parsed = parse("a,\"bc");
+        assertThat(parsed.complete()).isFalse();
+        assertThat(parsed.rows()).containsExactly(List.of("a", "bc"));
+    }
+
+    @Test
+    void acceptsClosingQuoteAtEndOfInput() {
+        Parsed parsed = parse("a,\"bc\"");
+        assertThat(parsed.complete()).isTrue();
+        assertThat(parsed.rows()).containsExactly(List.of("a", "bc"));
+    }
+
+    @Test
+    void parsesSignedLongsAndRejectsOverflow() {
+        List<Long> values = new ArrayList<>();
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        tokenizer.feed(ByteBuffer.wrap("-42,+7, 12 ,,9223372036854775807,9223372036854775808,-,12a\n"
+                .getBytes(StandardCharsets.UTF_8)), row -> {
+            for (int i = 0; i < row.getFieldCount(); i++) {
+                values.add(row.getLong(i));
+            }
+            values.add(row.getLong(row.getFieldCount()));
+        });
+
+        assertThat(values).containsExactly(-42L, 7L, 12L, 0L, Long.MAX_VALUE,
+                CsvTokenizer.NOT_A_NUMBER, CsvTokenizer.NOT_A_NUMBER, CsvTokenizer.NOT_A_NUMBER, 0L);
+    }
+
+    @Test
+    void hashesDependOnFieldBoundaries() {
+        Parsed parsed = parse("ab,c\na,bc\nab,c\n");
+        assertThat(parsed.hashes().get(0)).isNotEqualTo(parsed.hashes().get(1));
+        assertThat(parsed.hashes().get(0)).isEqualTo(parsed.hashes().get(2));
+    }
+
+    private static Parsed parse(String csv) {
+        byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+        return parse(bytes, bytes.length);
+    }
+
+    /**
+     * Feeds {@code bytes} as separate buffers ending at each of the given offsets.
+     */
+    private static Parsed parse(byte[] bytes, int... splits) {
+        CsvTokenizer tokenizer = new CsvTokenizer();
+        List<List<String>> rows = new ArrayList<>();
+        List<Long> hashes = new ArrayList<>();
+        Consumer<CsvTokenizer.Row> collect = row -> {
+            List<String> fields = new ArrayList<>();
+            for (int i = 0; i < row.getFieldCount(); i++) {
+                fields.add(row.getString(i));
+            }
+            rows.add(fields);
+            hashes.add(row.contentHash());
+        };
+
+        int start = 0;
+        for (int end : splits) {
+            tokenizer.feed(ByteBuffer.wrap(Arrays.copyOfRange(bytes, start, end)), collect);
+            start = end;
+        }
+        tokenizer.feed(ByteBuffer.wrap(Arrays.copyOfRange(bytes, start, bytes.length)), collect);
+        boolean complete = tokenizer.finish(collect);
+        return new Parsed(rows, hashes, complete);
+    }
+
+    private static int[] everyByte(int length) {
+        int[] splits = new int[length];
+        for (int i = 0; i < length; i++) {
+            splits[i] = i + 1;
+        }
+        return splits;
+    }
+
+    private record Parsed(List<List<String>> rows, List<Long> hashes, boolean complete) {
+    }
+}